@@ -39,8 +39,8 @@ public class GetTotal extends CSComd {
     public boolean exec() {
         if (sender instanceof Player) {
             Player player = (Player) sender;
-            CompletableFuture<Integer> cf = CompletableFuture
-                    .supplyAsync(() -> CustomShop.getPlugin().getDatabase().getTotalShopOwned(player.getUniqueId()));
+            CustomShop plugin = CustomShop.getPlugin();
+            CompletableFuture<Integer> cf = plugin.getPlayerData().getTotalShopsOwned(player.getUniqueId());
             cf.thenAccept(
                     total -> player.sendMessage(String.format(LanguageUtils.getString("total-shop-owned"), total)));
         }
@@ -19,7 +19,6 @@
 package com.paratopiamc.customshop.crate;
 
 import java.util.ArrayList;
-import java.util.concurrent.CompletableFuture;
 import com.paratopiamc.customshop.plugin.CSComd;
 import com.paratopiamc.customshop.plugin.CustomShop;
 import com.paratopiamc.customshop.utils.LanguageUtils;
@@ -49,8 +48,8 @@ public class LockAll extends CSComd {
             sender.sendMessage("§cCannot find specified player!");
             return false;
         }
-        CompletableFuture.runAsync(() -> {
-            CustomShop.getPlugin().getDatabase().setUnlockedShops(player, new ArrayList<>());
+        CustomShop.getPlugin().getIOExecutor().run(() -> {
+            CustomShop.getPlugin().getPlayerData().setUnlockedShops(player, new ArrayList<>());
             sender.sendMessage("§aSuccessfully locked all custom shops of the specified player!");
         });
         return true;
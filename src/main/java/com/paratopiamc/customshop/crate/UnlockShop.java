@@ -56,8 +56,8 @@ public class UnlockShop implements Listener {
                     player.sendMessage(LanguageUtils.getString("unlock.confirmation"));
                     state.setUnlockingShop(item);
                 } else {
-                    CompletableFuture<List<Integer>> cf = CompletableFuture
-                            .supplyAsync(() -> CustomShop.getPlugin().getDatabase().getUnlockedShops(player));
+                    CompletableFuture<List<Integer>> cf = CustomShop.getPlugin().getPlayerData()
+                            .getUnlockedShops(player);
                     cf.thenAccept(list -> {
                         BukkitRunnable runnable = new BukkitRunnable() {
                             @Override
@@ -67,13 +67,10 @@ public class UnlockShop implements Listener {
                                     player.sendMessage(String.format(LanguageUtils.getString("unlock.unlocked-already"),
                                             displayName));
                                 } else {
-                                    list.add(modelData);
                                     player.playSound(player.getLocation(), Sound.ENTITY_PLAYER_LEVELUP, 1.5F, 1.0F);
-                                    CompletableFuture.runAsync(() -> {
-                                        CustomShop.getPlugin().getDatabase().setUnlockedShops(player, list);
-                                        player.sendMessage(String.format(LanguageUtils.getString("unlock.unlocked-new"),
-                                                displayName));
-                                    });
+                                    CustomShop.getPlugin().getPlayerData().addUnlockedShop(player, modelData);
+                                    player.sendMessage(
+                                            String.format(LanguageUtils.getString("unlock.unlocked-new"), displayName));
                                     item.setAmount(item.getAmount() - 1);
                                 }
                             }
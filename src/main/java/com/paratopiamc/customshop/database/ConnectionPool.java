@@ -0,0 +1,158 @@
+/*
+ *  This file is part of CustomShop. Copyright (c) 2021 Paratopia.
+ *
+ *  CustomShop is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  CustomShop is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with CustomShop. If not, see <https://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.paratopiamc.customshop.database;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded pool of connections that are kept open for the lifetime of the
+ * plugin. Connections are opened lazily up to {@code maxSize}; callers beyond
+ * that wait for a connection to be released. A pool of size 1 serializes all
+ * access to the database, which is what SQLite expects.
+ */
+public class ConnectionPool {
+    /** Seconds to wait for a free connection before giving up. */
+    private static final long BORROW_TIMEOUT = 10;
+
+    /**
+     * Opens new physical connections for the pool.
+     */
+    @FunctionalInterface
+    public interface ConnectionFactory {
+        Connection open() throws SQLException;
+    }
+
+    private final ConnectionFactory factory;
+    private final int maxSize;
+    private final BlockingQueue<PooledConnection> idle;
+    private final List<PooledConnection> all;
+    private boolean closed;
+
+    /**
+     * Constructor for a connection pool.
+     *
+     * @param factory opener for new physical connections
+     * @param maxSize maximum number of connections opened at once, at least 1
+     */
+    public ConnectionPool(ConnectionFactory factory, int maxSize) {
+        this.factory = factory;
+        this.maxSize = Math.max(1, maxSize);
+        this.idle = new ArrayBlockingQueue<>(this.maxSize);
+        this.all = new ArrayList<>(this.maxSize);
+    }
+
+    /**
+     * Borrows a connection from the pool, opening a new one if the pool has not
+     * reached its maximum size. Connections that were closed underneath the pool
+     * are transparently replaced. Every borrowed connection must be handed back
+     * through {@link #release(PooledConnection)}.
+     *
+     * @return connection for exclusive use by the caller
+     * @throws SQLException if no connection could be obtained
+     */
+    public PooledConnection borrow() throws SQLException {
+        PooledConnection conn = idle.poll();
+        if (conn == null) {
+            conn = openIfBelowCapacity();
+        }
+        if (conn == null) {
+            try {
+                conn = idle.poll(BORROW_TIMEOUT, TimeUnit.SECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrupted while waiting for a database connection", ex);
+            }
+            if (conn == null) {
+                throw new SQLException("Timed out waiting for a database connection");
+            }
+        }
+        if (!conn.isUsable()) {
+            discard(conn);
+            return borrow();
+        }
+        return conn;
+    }
+
+    /**
+     * Returns a borrowed connection to the pool. Does nothing if {@code conn} is
+     * {@code null}.
+     *
+     * @param conn connection obtained from {@link #borrow()}
+     */
+    public void release(PooledConnection conn) {
+        if (conn == null) {
+            return;
+        }
+        boolean poolClosed;
+        synchronized (this) {
+            poolClosed = this.closed;
+        }
+        conn.markIdle();
+        if (poolClosed || !conn.isUsable()) {
+            discard(conn);
+        } else {
+            idle.offer(conn);
+        }
+    }
+
+    /**
+     * Closes every connection opened by this pool. Connections still borrowed are
+     * closed as they are released.
+     */
+    public void close() {
+        List<PooledConnection> toClose = new ArrayList<>();
+        synchronized (this) {
+            this.closed = true;
+            idle.drainTo(toClose);
+        }
+        toClose.forEach(this::discard);
+    }
+
+    private synchronized PooledConnection openIfBelowCapacity() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed");
+        } else if (all.size() >= maxSize) {
+            return null;
+        }
+        Connection connection = factory.open();
+        if (connection == null) {
+            throw new SQLException("Unable to open database connection");
+        }
+        PooledConnection conn = new PooledConnection(connection);
+        all.add(conn);
+        return conn;
+    }
+
+    private void discard(PooledConnection conn) {
+        synchronized (this) {
+            all.remove(conn);
+        }
+        try {
+            conn.close();
+        } catch (SQLException ex) {
+            // Connection is unusable either way, nothing more to do.
+        }
+    }
+}
@@ -22,12 +22,25 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
+import java.util.logging.Logger;
+import com.paratopiamc.customshop.player.PlayerData;
 import com.paratopiamc.customshop.plugin.CustomShop;
 import com.paratopiamc.customshop.plugin.CustomShopLogger;
+import com.paratopiamc.customshop.shop.RegisteredShop;
+import com.paratopiamc.customshop.shop.ShopType;
+import com.paratopiamc.customshop.shop.TradePipeline;
 import com.paratopiamc.customshop.utils.LanguageUtils;
 import com.paratopiamc.customshop.utils.MessageUtils;
 import com.paratopiamc.customshop.utils.MessageUtils.Message;
@@ -39,68 +52,278 @@ import org.bukkit.inventory.meta.ItemMeta;
 
 /**
  * Parent class of a database loader. Contains implementation of data retrieval
- * and update methods.
+ * and update methods. Connections are kept open in a {@link ConnectionPool} for
+ * the lifetime of the plugin, and every query is issued through a cached,
+ * parameterized {@link PreparedStatement}. Updates are not written immediately
+ * but handed to a {@link WriteBehindQueue}, which commits them in batches.
  */
 public abstract class Database {
     CustomShop plugin;
-    Connection connection;
+    Logger logger;
+    ConnectionPool pool;
+    WriteBehindQueue writeQueue;
+    /** Offline messages kept per owner, or 0 for no limit. */
+    int maxMessagesPerOwner = 50;
+    /** Milliseconds an offline message is kept without being updated, or 0. */
+    long messageTTL = TimeUnit.DAYS.toMillis(30);
     /** Name of database table. */
     static String dbname = "player_data";
     static String totalShopOwned = "total_shops_owned";
     static String shopsUnlocked = "shops_unlocked";
     static String pendingTransactions = "pending_transaction_messages";
+    static String schemaVersion = "schema_version";
+    static String shops = "shops";
+    static String transactions = "transactions";
+    static String tradeJournal = "trade_journal";
+
+    private static final String SELECT_UNLOCKED_SHOPS = "SELECT shops_unlocked FROM " + shopsUnlocked
+            + " WHERE player = ?;";
+    private static final String SELECT_TOTAL_SHOPS_OWNED = "SELECT total_shops_owned FROM " + totalShopOwned
+            + " WHERE player = ?;";
+    private static final String UPSERT_TOTAL_SHOPS_OWNED = "INSERT INTO " + totalShopOwned
+            + " (player,total_shops_owned) VALUES(?,?) ON CONFLICT(player) DO UPDATE SET"
+            + " total_shops_owned = total_shops_owned + excluded.total_shops_owned;";
+    private static final String REPLACE_TOTAL_SHOPS_OWNED = "REPLACE INTO " + totalShopOwned
+            + " (player,total_shops_owned) VALUES(?,?);";
+    private static final String DELETE_UNLOCKED_SHOPS = "DELETE FROM " + shopsUnlocked + " WHERE player = ?;";
+    private static final String DELETE_UNLOCKED_SHOP = "DELETE FROM " + shopsUnlocked
+            + " WHERE player = ? AND shops_unlocked = ?;";
+    private static final String INSERT_UNLOCKED_SHOP = "INSERT OR IGNORE INTO " + shopsUnlocked
+            + " (player,shops_unlocked) VALUES(?,?);";
+    private static final String UPDATE_MESSAGE = "UPDATE " + pendingTransactions
+            + " SET amount = amount + ?, total_cost = total_cost + ?, sale_count = sale_count + ?, updated_at = ?"
+            + " WHERE player = ? AND customer = ? AND selling = ? AND item_name = ? AND has_display_name = ?;";
+    private static final String INSERT_MESSAGE = "INSERT INTO " + pendingTransactions
+            + " (player,customer,selling,item_name,has_display_name,amount,total_cost,sale_count,updated_at)"
+            + " VALUES(?,?,?,?,?,?,?,?,?);";
+    // Rows are merged on write, but may still be duplicated by concurrent writers
+    // on a shared database, so they are grouped again on read.
+    private static final String SELECT_MESSAGES = "SELECT customer,selling,item_name,has_display_name,"
+            + "SUM(amount) AS amount,SUM(total_cost) AS total_cost,SUM(sale_count) AS sale_count,"
+            + "MAX(updated_at) AS updated_at FROM " + pendingTransactions + " WHERE player = ? AND updated_at >= ?"
+            + " GROUP BY customer,selling,item_name,has_display_name ORDER BY MAX(updated_at) DESC;";
+    private static final String COUNT_MESSAGES = "SELECT COUNT(*) FROM " + pendingTransactions
+            + " WHERE player = ?;";
+    private static final String SELECT_MESSAGE_IDS = "SELECT id FROM " + pendingTransactions
+            + " WHERE player = ? ORDER BY updated_at DESC, id DESC;";
+    private static final String DELETE_MESSAGE = "DELETE FROM " + pendingTransactions + " WHERE id = ?;";
+    private static final String DELETE_EXPIRED_MESSAGES = "DELETE FROM " + pendingTransactions
+            + " WHERE updated_at < ?;";
+    /** Milliseconds between two purges of expired messages. */
+    private static final long MESSAGE_EXPIRY_INTERVAL = TimeUnit.HOURS.toMillis(1);
+    private static final String CREATE_SCHEMA_VERSION = "CREATE TABLE IF NOT EXISTS " + schemaVersion
+            + " (version INTEGER NOT NULL, description VARCHAR(255) NOT NULL, applied_at BIGINT NOT NULL,"
+            + " PRIMARY KEY (version));";
+    private static final String SELECT_SCHEMA_VERSION = "SELECT MAX(version) FROM " + schemaVersion + ";";
+    private static final String INSERT_SCHEMA_VERSION = "INSERT INTO " + schemaVersion
+            + " (version,description,applied_at) VALUES(?,?,?);";
+    private static final String INSERT_TRADE = "INSERT INTO " + transactions
+            + " (shop_id,buyer,seller,item_key,amount,unit_price,created_at) VALUES(?,?,?,?,?,?,?);";
+    private static final String SELECT_SHOPS = "SELECT * FROM " + shops + ";";
+    private static final String REPLACE_SHOP = "REPLACE INTO " + shops
+            + " (id,world,x,y,z,type,owner,admin,created_at) VALUES(?,?,?,?,?,?,?,?,?);";
+    private static final String DELETE_SHOP = "DELETE FROM " + shops + " WHERE id = ?;";
+    private static final String DELETE_MESSAGES = "DELETE FROM " + pendingTransactions + " WHERE player = ?;";
+    private static final String REPLACE_JOURNAL = "REPLACE INTO " + tradeJournal
+            + " (id,shop_id,payer,payee,total,state,created_at,updated_at) VALUES(?,?,?,?,?,?,?,?);";
+    private static final String DELETE_JOURNAL = "DELETE FROM " + tradeJournal + " WHERE id = ?;";
+    private static final String SELECT_JOURNAL = "SELECT * FROM " + tradeJournal + " ORDER BY created_at;";
+
+    /**
+     * Unit of work executed against a borrowed connection.
+     *
+     * @param <T> type of result
+     */
+    @FunctionalInterface
+    interface SQLTask<T> {
+        T run(PooledConnection conn) throws SQLException;
+    }
 
     /**
      * Constuctor for database.
      *
      * @param instance plugin instance used for logging
-     * @param dbname   name of database table
      */
     public Database(CustomShop instance) {
+        this(instance, instance.getLogger(), instance.getConfig().getLong("database.flush-interval-ms", 500),
+                instance.getConfig().getInt("database.flush-max-operations", 200));
+        maxMessagesPerOwner = Math.max(0, instance.getConfig().getInt("database.messages.max-per-owner", 50));
+        messageTTL = TimeUnit.DAYS
+                .toMillis(Math.max(0, instance.getConfig().getInt("database.messages.ttl-days", 30)));
+    }
+
+    /**
+     * Constructor for a database that may run without a plugin instance, e.g. in
+     * tests.
+     *
+     * @param instance      plugin instance, or {@code null}
+     * @param logger        logger for failed statements
+     * @param flushInterval milliseconds between two commits of pending writes
+     * @param maxOperations pending writes that trigger an early commit
+     */
+    Database(CustomShop instance, Logger logger, long flushInterval, int maxOperations) {
         plugin = instance;
+        this.logger = logger;
+        writeQueue = new WriteBehindQueue(this, logger, flushInterval, maxOperations);
+        writeQueue.schedule(this::expireMessages, MESSAGE_EXPIRY_INTERVAL);
     }
 
     /**
-     * Returns connection established by the database loader.
+     * Opens a new physical connection to the database. Called by the connection
+     * pool only when it needs to grow or replace a broken connection.
      *
      * @return SQL connection
+     * @throws SQLException if the connection cannot be established
+     */
+    abstract Connection openConnection() throws SQLException;
+
+    /**
+     * Maximum number of connections kept open at once.
+     *
+     * @return connection pool size
+     */
+    int poolSize() {
+        return 1;
+    }
+
+    /**
+     * Statement that atomically adds its second parameter to the shop count of
+     * the player in its first parameter, inserting the row if it does not exist.
+     *
+     * @return SQL text of the statement
+     */
+    String upsertShopCountStatement() {
+        return UPSERT_TOTAL_SHOPS_OWNED;
+    }
+
+    /**
+     * Statement that inserts the unlocked shop in its second parameter for the
+     * player in its first parameter, doing nothing if the row already exists.
+     *
+     * @return SQL text of the statement
+     */
+    String insertUnlockedShopStatement() {
+        return INSERT_UNLOCKED_SHOP;
+    }
+
+    /**
+     * Schema migrations of the database, in ascending order of version. The first
+     * migration creates the tables of a new database; later ones bring databases
+     * created by older versions of the plugin up to date.
+     *
+     * @return list of migrations
      */
-    public abstract Connection getSQLConnection();
+    abstract List<Migration> migrations();
 
     /**
-     * Executes create table statement.
+     * Commits all pending writes and closes all connections held by the database.
+     * Called on plugin disable.
      */
-    public abstract void load();
+    public void close() {
+        writeQueue.shutdown();
+        if (pool != null) {
+            pool.close();
+        }
+    }
 
     /**
-     * Initializes SQL connection by attempting to execute select statements from
-     * respective tables in the database.
+     * Runs {@code task} on a connection borrowed from the pool, returning
+     * {@code fallback} if the task fails.
+     *
+     * @param task     work to execute
+     * @param fallback result if the task throws
+     * @return result of the task
      */
-    public void initialize() {
-        connection = getSQLConnection();
+    <T> T execute(SQLTask<T> task, T fallback) {
+        PooledConnection conn = null;
         try {
-            PreparedStatement ps = connection.prepareStatement("SELECT * FROM " + totalShopOwned);
-            ResultSet rs = ps.executeQuery();
-            close(ps, rs);
-            ps = connection.prepareStatement("SELECT * FROM " + shopsUnlocked);
-            rs = ps.executeQuery();
-            close(ps, rs);
-            // 1.5 update adds an extra column, drop table if column does not already exist
-            ps = connection.prepareStatement("SELECT * FROM " + pendingTransactions);
-            rs = ps.executeQuery();
-            int columnCount = rs.getMetaData().getColumnCount();
-            close(ps, rs);
-            if (columnCount <= 6) {
-                CustomShopLogger.sendMessage(
-                        "Missing required column in " + pendingTransactions + " table, recreating table...",
-                        CustomShopLogger.Level.WARN);
-                ps = connection.prepareStatement("DROP table " + pendingTransactions);
-                ps.executeUpdate();
-                close(ps, connection);
-                this.load();
-            }
+            conn = getPool().borrow();
+            return task.run(conn);
         } catch (SQLException ex) {
-            plugin.getLogger().log(Level.SEVERE, "Unable to retrieve connection", ex);
+            logger.log(Level.SEVERE, Errors.sqlConnectionExecute(), ex);
+            return fallback;
+        } finally {
+            getPool().release(conn);
+        }
+    }
+
+    /**
+     * Runs {@code task} inside a single transaction, rolling back every change
+     * made by the task if any of its statements fail or it throws otherwise. Only
+     * an {@code SQLException} results in {@code fallback}; other exceptions are
+     * rethrown once the transaction is rolled back.
+     *
+     * @param task     work to execute
+     * @param fallback result if the task throws
+     * @return result of the task
+     */
+    <T> T executeInTransaction(SQLTask<T> task, T fallback) {
+        return execute(conn -> {
+            Connection connection = conn.getConnection();
+            connection.setAutoCommit(false);
+            try {
+                T result = task.run(conn);
+                connection.commit();
+                return result;
+            } catch (RuntimeException | SQLException ex) {
+                connection.rollback();
+                throw ex;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        }, fallback);
+    }
+
+    private synchronized ConnectionPool getPool() {
+        if (pool == null) {
+            pool = new ConnectionPool(this::openConnection, poolSize());
+        }
+        return pool;
+    }
+
+    /**
+     * Brings the schema up to date by applying, in a single transaction, every
+     * migration newer than the version recorded in the {@code schema_version}
+     * table. Nothing is applied if any migration fails.
+     */
+    public void load() {
+        List<Migration> migrations = migrations();
+        int version = executeInTransaction(conn -> {
+            try (Statement s = conn.getConnection().createStatement()) {
+                s.executeUpdate(CREATE_SCHEMA_VERSION);
+                int current;
+                try (ResultSet rs = s.executeQuery(SELECT_SCHEMA_VERSION)) {
+                    current = rs.next() ? rs.getInt(1) : 0;
+                }
+                for (Migration migration : migrations) {
+                    if (migration.version <= current) {
+                        continue;
+                    }
+                    migration.step.apply(conn.getConnection(), s);
+                    PreparedStatement ps = conn.prepare(INSERT_SCHEMA_VERSION);
+                    ps.setInt(1, migration.version);
+                    ps.setString(2, migration.description);
+                    ps.setLong(3, System.currentTimeMillis());
+                    ps.executeUpdate();
+                    report("Applied database migration " + migration.version + ": " + migration.description,
+                            CustomShopLogger.Level.INFO);
+                    current = migration.version;
+                }
+                return current;
+            }
+        }, -1);
+        if (version < 0) {
+            report("Failed to migrate database schema, see errors above.", CustomShopLogger.Level.FAIL);
+        } else {
+            expireMessages();
+        }
+    }
+
+    private void report(String message, CustomShopLogger.Level level) {
+        if (plugin == null) {
+            logger.info(message);
+        } else {
+            CustomShopLogger.sendMessage(message, level);
         }
     }
 
@@ -112,26 +335,40 @@ public abstract class Database {
      * @return list of shops unlocked by the player
      */
     public List<Integer> getUnlockedShops(Player player) {
-        String string = player.getUniqueId().toString();
-        Connection conn = null;
-        PreparedStatement ps = null;
-        ResultSet rs = null;
+        writeQueue.flushAndWait();
+        return execute(conn -> selectUnlockedShops(conn, player.getUniqueId().toString()), new ArrayList<>());
+    }
+
+    private List<Integer> selectUnlockedShops(PooledConnection conn, String playerID) throws SQLException {
         List<Integer> result = new ArrayList<>();
-        try {
-            conn = getSQLConnection();
-            ps = conn.prepareStatement("SELECT * FROM " + shopsUnlocked + " WHERE player = '" + string + "';");
-            rs = ps.executeQuery();
+        PreparedStatement ps = conn.prepare(SELECT_UNLOCKED_SHOPS);
+        ps.setString(1, playerID);
+        try (ResultSet rs = ps.executeQuery()) {
             while (rs.next()) {
                 result.add(rs.getInt("shops_unlocked"));
             }
-        } catch (SQLException ex) {
-            plugin.getLogger().log(Level.SEVERE, Errors.sqlConnectionExecute(), ex);
-        } finally {
-            close(ps, conn);
         }
         return result;
     }
 
+    /**
+     * Loads everything kept about a player in one transaction: their shop count,
+     * unlocked shops and pending transaction messages. The messages are deleted
+     * from the database, as with {@link #getMessages(String)}. The data reflects
+     * exactly the writes made before this call, see
+     * {@link WriteBehindQueue#read(java.util.function.Supplier)}.
+     *
+     * @param playerID UUID of player of interest
+     * @return future completed with the data of the player
+     */
+    public CompletableFuture<PlayerData> loadPlayerData(UUID playerID) {
+        String id = playerID.toString();
+        return writeQueue.read(() -> executeInTransaction(
+                conn -> new PlayerData(selectShopCount(conn, id), selectUnlockedShops(conn, id),
+                        selectMessages(conn, id)),
+                new PlayerData(0, new ArrayList<>(), new ArrayList<>())));
+    }
+
     /**
      * Returns the total number of shops owned by player.
      *
@@ -139,23 +376,8 @@ public abstract class Database {
      * @return total custom shops owned by player
      */
     public Integer getTotalShopOwned(UUID playerID) {
-        String string = playerID.toString();
-        Connection conn = null;
-        PreparedStatement ps = null;
-        ResultSet rs = null;
-        Integer result = 0;
-        try {
-            conn = getSQLConnection();
-            ps = conn.prepareStatement("SELECT * FROM " + totalShopOwned + " WHERE player = '" + string + "';");
-            rs = ps.executeQuery();
-            if (rs.next())
-                result = rs.getInt("total_shops_owned");
-        } catch (SQLException ex) {
-            plugin.getLogger().log(Level.SEVERE, Errors.sqlConnectionExecute(), ex);
-        } finally {
-            close(ps, conn);
-        }
-        return result;
+        writeQueue.flushAndWait();
+        return execute(conn -> selectShopCount(conn, playerID.toString()), 0);
     }
 
     /**
@@ -163,20 +385,10 @@ public abstract class Database {
      * 
      * @param playerID player's UUID
      * @param number   updated number of shops owned
+     * @return future completed with the shop count once it is committed
      */
-    public void setShopsOwned(UUID playerID, int number) {
-        Connection conn = null;
-        PreparedStatement ps = null;
-        try {
-            conn = getSQLConnection();
-            ps = conn.prepareStatement("REPLACE INTO " + totalShopOwned + " (player,total_shops_owned) VALUES('"
-                    + playerID.toString() + "', " + number + ")");
-            ps.executeUpdate();
-        } catch (SQLException ex) {
-            plugin.getLogger().log(Level.SEVERE, Errors.sqlConnectionExecute(), ex);
-        } finally {
-            close(ps, conn);
-        }
+    public CompletableFuture<Integer> setShopsOwned(UUID playerID, int number) {
+        return writeQueue.enqueue(writes -> writes.setShopCount(playerID, number), false);
     }
 
     /**
@@ -184,74 +396,66 @@ public abstract class Database {
      * operation has no lower limit (i.e. it can decrease below 0).
      *
      * @param playerID UUID of player of interest
+     * @return future completed with the shop count right after this decrement
      */
-    public void decrementTotalShopsOwned(UUID playerID) {
-        Integer previousTotal = getTotalShopOwned(playerID);
-        Connection conn = null;
-        PreparedStatement ps = null;
-        try {
-            conn = getSQLConnection();
-            ps = conn.prepareStatement("REPLACE INTO " + totalShopOwned + " (player,total_shops_owned) VALUES('"
-                    + playerID.toString() + "', " + (previousTotal - 1) + ")");
-            ps.executeUpdate();
-        } catch (SQLException ex) {
-            plugin.getLogger().log(Level.SEVERE, Errors.sqlConnectionExecute(), ex);
-        } finally {
-            close(ps, conn);
-        }
+    public CompletableFuture<Integer> decrementTotalShopsOwned(UUID playerID) {
+        return writeQueue.enqueue(writes -> writes.addShopDelta(playerID, -1), false);
     }
 
     /**
-     * Increments the total number of custom shops owned by the player.
+     * Increments the total number of custom shops owned by the player. The
+     * increment is committed without waiting for the next scheduled batch, as
+     * shop creation waits on the resulting count.
      *
      * @param playerID UUID of player of interest
+     * @return future completed with the shop count right after this increment
      */
-    public void incrementTotalShopsOwned(UUID playerID) {
-        Integer previousTotal = getTotalShopOwned(playerID);
-        Connection conn = null;
-        PreparedStatement ps = null;
-        try {
-            conn = getSQLConnection();
-            ps = conn.prepareStatement("REPLACE INTO " + totalShopOwned + " (player,total_shops_owned) VALUES('"
-                    + playerID.toString() + "', " + (previousTotal + 1) + ")");
-            ps.executeUpdate();
-        } catch (SQLException ex) {
-            plugin.getLogger().log(Level.SEVERE, Errors.sqlConnectionExecute(), ex);
-        } finally {
-            close(ps, conn);
-        }
+    public CompletableFuture<Integer> incrementTotalShopsOwned(UUID playerID) {
+        return writeQueue.enqueue(writes -> writes.addShopDelta(playerID, 1), true);
     }
 
     /**
-     * Updates the list of shops owned by the player.
+     * Updates the list of shops owned by the player. Replaces every unlocked shop
+     * of the player; use {@link #addUnlockedShop(Player, int)} or
+     * {@link #removeUnlockedShops(Player, Collection)} to change only a few.
      *
      * @param player        player of interest
      * @param unlockedShops list of shops unlocked by the player
      */
     public void setUnlockedShops(Player player, List<Integer> unlockedShops) {
-        Connection conn = null;
-        PreparedStatement ps = null;
-        try {
-            conn = getSQLConnection();
-            ps = conn.prepareStatement(
-                    "DELETE FROM " + shopsUnlocked + " WHERE player = '" + player.getUniqueId().toString() + "';");
-            ps.executeUpdate();
-            for (Integer e : unlockedShops) {
-                ps = conn.prepareStatement("INSERT INTO " + shopsUnlocked + " (player,shops_unlocked) VALUES('"
-                        + player.getUniqueId().toString() + "'," + e + ");");
-                ps.executeUpdate();
-            }
-        } catch (SQLException ex) {
-            plugin.getLogger().log(Level.SEVERE, Errors.sqlConnectionExecute(), ex);
-        } finally {
-            close(ps, conn);
-        }
+        UUID playerID = player.getUniqueId();
+        writeQueue.enqueue(writes -> writes.setUnlockedShops(playerID, unlockedShops));
+    }
+
+    /**
+     * Adds a shop to the shops unlocked by the player. Does nothing if the shop is
+     * already unlocked.
+     *
+     * @param player player of interest
+     * @param model  custom model data of the shop
+     */
+    public void addUnlockedShop(Player player, int model) {
+        UUID playerID = player.getUniqueId();
+        writeQueue.enqueue(writes -> writes.addUnlockedShop(playerID, model));
+    }
+
+    /**
+     * Removes shops from the shops unlocked by the player.
+     *
+     * @param player player of interest
+     * @param models custom model data of the shops
+     */
+    public void removeUnlockedShops(Player player, Collection<Integer> models) {
+        UUID playerID = player.getUniqueId();
+        List<Integer> copy = new ArrayList<>(models);
+        writeQueue.enqueue(writes -> writes.removeUnlockedShops(playerID, copy));
     }
 
     /**
      * Used to store transaction messages to offline shop owners. Messages remain
      * unformatted until it is queried for using {@link #getMessages(String)} on
-     * owner join event.
+     * owner join event. Sales with the same customer, item and direction are
+     * merged into a single message.
      *
      * @param ownerID   String replresentation of shop owner's UUID
      * @param customer  of the transaction
@@ -262,105 +466,458 @@ public abstract class Database {
      */
     public void storeMessage(String ownerID, Player customer, boolean selling, ItemStack item, int amount,
             double totalCost) {
-        Connection conn = null;
-        PreparedStatement ps = null;
-        int sell = selling ? 1 : 0;
         ItemMeta meta = item.getItemMeta();
-        int hasDisplayName = meta.hasDisplayName() ? 1 : 0;
-        String itemName = meta.hasDisplayName() ? meta.getDisplayName() : item.getType().toString();
+        boolean hasDisplayName = meta.hasDisplayName();
+        String itemName = hasDisplayName ? meta.getDisplayName() : item.getType().toString();
+        PendingWrites.Message message = new PendingWrites.Message(ownerID, customer.getUniqueId().toString(),
+                selling, itemName, hasDisplayName, amount, totalCost, System.currentTimeMillis());
+        writeQueue.enqueue(writes -> writes.addMessage(message));
+    }
 
-        try {
-            conn = getSQLConnection();
-            ps = conn.prepareStatement("INSERT INTO " + pendingTransactions
-                    + " (player,customer,selling,item_name,has_display_name,amount,total_cost) VALUES('" + ownerID
-                    + "', '" + customer.getUniqueId().toString() + "'," + sell + ", '" + itemName + "', "
-                    + hasDisplayName + ", " + amount + ", " + totalCost + ");");
-            ps.executeUpdate();
-        } catch (SQLException ex) {
-            plugin.getLogger().log(Level.SEVERE, Errors.sqlConnectionExecute(), ex);
-        } finally {
-            close(ps, conn);
+    /**
+     * Appends a completed trade to the transactions ledger. Only enqueues the row;
+     * it is written with the next batch.
+     *
+     * @param shopID    id of the shop in the {@code ShopRegistry}, may be
+     *                  {@code null}
+     * @param buyerID   UUID of the player receiving the items
+     * @param sellerID  UUID of the player receiving the money
+     * @param item      item traded
+     * @param amount    amount of items traded
+     * @param totalCost total money involved in the trade
+     */
+    public void recordTrade(UUID shopID, UUID buyerID, UUID sellerID, ItemStack item, int amount, double totalCost) {
+        String itemKey = item.getType().getKey().toString();
+        if (item.hasItemMeta() && item.getItemMeta().hasCustomModelData()) {
+            itemKey += "#" + item.getItemMeta().getCustomModelData();
+        }
+        PendingWrites.Trade trade = new PendingWrites.Trade(shopID == null ? null : shopID.toString(),
+                buyerID.toString(), sellerID.toString(), itemKey, amount, amount == 0 ? 0 : totalCost / amount,
+                System.currentTimeMillis());
+        writeQueue.enqueue(writes -> writes.addTrade(trade));
+    }
+
+    /**
+     * Records a trade in the journal at its current state, and waits for the
+     * record to be committed. Used before money moves; the calling thread must not
+     * be the main thread.
+     *
+     * @param trade trade to record
+     * @return {@code true} if the trade was committed to the journal
+     */
+    public boolean journalTrade(TradePipeline.Trade trade) {
+        PendingWrites.JournalEntry entry = new PendingWrites.JournalEntry(trade, System.currentTimeMillis());
+        CompletableFuture<Boolean> result = writeQueue.enqueue(writes -> writes.saveJournal(entry), false);
+        writeQueue.flushAndWait();
+        return result.getNow(false);
+    }
+
+    /**
+     * Records the current state of a journaled trade. Only enqueues the change;
+     * it is written with the next batch.
+     *
+     * @param trade trade to update
+     */
+    public void updateJournal(TradePipeline.Trade trade) {
+        PendingWrites.JournalEntry entry = new PendingWrites.JournalEntry(trade, System.currentTimeMillis());
+        writeQueue.enqueue(writes -> writes.saveJournal(entry));
+    }
+
+    /**
+     * Removes a settled trade from the journal. Only enqueues the removal; it is
+     * written with the next batch.
+     *
+     * @param tradeID id of the trade
+     */
+    public void deleteJournal(UUID tradeID) {
+        writeQueue.enqueue(writes -> writes.deleteJournal(tradeID));
+    }
+
+    /**
+     * Returns every trade left in the journal, oldest first. Trades with a state
+     * that is no longer known are skipped.
+     *
+     * @return list of journaled trades
+     */
+    public List<TradePipeline.Trade> loadJournal() {
+        writeQueue.flushAndWait();
+        return execute(conn -> {
+            List<TradePipeline.Trade> result = new ArrayList<>();
+            PreparedStatement ps = conn.prepare(SELECT_JOURNAL);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    TradePipeline.State state;
+                    try {
+                        state = TradePipeline.State.valueOf(rs.getString("state"));
+                    } catch (IllegalArgumentException ex) {
+                        continue;
+                    }
+                    result.add(new TradePipeline.Trade(UUID.fromString(rs.getString("id")),
+                            parseUUID(rs.getString("shop_id")), parseUUID(rs.getString("payer")),
+                            parseUUID(rs.getString("payee")), rs.getDouble("total"), state,
+                            rs.getLong("created_at")));
+                }
+            }
+            return result;
+        }, new ArrayList<>());
+    }
+
+    private static UUID parseUUID(String value) {
+        return value == null ? null : UUID.fromString(value);
+    }
+
+    /**
+     * Commits a batch of pending writes in one transaction. Called by the
+     * {@link WriteBehindQueue}'s writer thread only, which completes the futures
+     * of the batch with the outcome, see {@link PendingWrites#complete(Map)}.
+     *
+     * @param batch coalesced writes to commit
+     * @return shop count right after each change of a shop count, {@code null}
+     *         if the transaction was rolled back
+     */
+    Map<PendingWrites.Change, Integer> commit(PendingWrites batch) {
+        Map<PendingWrites.Change, Integer> results = new HashMap<>();
+        boolean committed = executeInTransaction(conn -> {
+            PreparedStatement ps;
+            for (Map.Entry<UUID, PendingWrites.ShopCount> e : batch.shopCounts.entrySet()) {
+                String playerID = e.getKey().toString();
+                PendingWrites.ShopCount count = e.getValue();
+                if (count.absolute == null) {
+                    // Single atomic update, then walk back from the new total to find the
+                    // count right after each individual change.
+                    ps = conn.prepare(upsertShopCountStatement());
+                    ps.setString(1, playerID);
+                    ps.setInt(2, count.delta);
+                    ps.executeUpdate();
+                    int total = selectShopCount(conn, playerID);
+                    for (int i = count.changes.size() - 1; i >= 0; i--) {
+                        PendingWrites.Change change = count.changes.get(i);
+                        results.put(change, total);
+                        total -= change.value;
+                    }
+                } else {
+                    int total = selectShopCount(conn, playerID);
+                    for (PendingWrites.Change change : count.changes) {
+                        total = change.absolute ? change.value : total + change.value;
+                        results.put(change, total);
+                    }
+                    ps = conn.prepare(REPLACE_TOTAL_SHOPS_OWNED);
+                    ps.setString(1, playerID);
+                    ps.setInt(2, total);
+                    ps.executeUpdate();
+                }
+            }
+            boolean removals = false;
+            boolean additions = false;
+            PreparedStatement removeShop = conn.prepare(DELETE_UNLOCKED_SHOP);
+            PreparedStatement addShop = conn.prepare(insertUnlockedShopStatement());
+            for (Map.Entry<UUID, PendingWrites.UnlockChange> e : batch.unlockedShops.entrySet()) {
+                String playerID = e.getKey().toString();
+                PendingWrites.UnlockChange change = e.getValue();
+                if (change.replace) {
+                    ps = conn.prepare(DELETE_UNLOCKED_SHOPS);
+                    ps.setString(1, playerID);
+                    ps.executeUpdate();
+                }
+                for (Integer model : change.removed) {
+                    removeShop.setString(1, playerID);
+                    removeShop.setInt(2, model);
+                    removeShop.addBatch();
+                    removals = true;
+                }
+                for (Integer model : change.added) {
+                    addShop.setString(1, playerID);
+                    addShop.setInt(2, model);
+                    addShop.addBatch();
+                    additions = true;
+                }
+            }
+            // Removals go first, as a model cannot be both removed and added for the
+            // same player in one batch.
+            if (removals) {
+                removeShop.executeBatch();
+            }
+            if (additions) {
+                addShop.executeBatch();
+            }
+            if (!batch.messages.isEmpty()) {
+                // Add to the existing row of each message, inserting only those that have
+                // none yet.
+                List<PendingWrites.Message> messages = new ArrayList<>(batch.messages.values());
+                ps = conn.prepare(UPDATE_MESSAGE);
+                for (PendingWrites.Message message : messages) {
+                    ps.setInt(1, message.amount);
+                    ps.setDouble(2, message.totalCost);
+                    ps.setInt(3, message.saleCount);
+                    ps.setLong(4, message.updatedAt);
+                    ps.setString(5, message.ownerID);
+                    ps.setString(6, message.customerID);
+                    ps.setInt(7, message.selling ? 1 : 0);
+                    ps.setString(8, message.itemName);
+                    ps.setInt(9, message.hasDisplayName ? 1 : 0);
+                    ps.addBatch();
+                }
+                int[] updated = ps.executeBatch();
+                boolean inserts = false;
+                Set<String> owners = new HashSet<>();
+                ps = conn.prepare(INSERT_MESSAGE);
+                for (int i = 0; i < messages.size(); i++) {
+                    PendingWrites.Message message = messages.get(i);
+                    owners.add(message.ownerID);
+                    if (updated[i] != 0) {
+                        continue;
+                    }
+                    ps.setString(1, message.ownerID);
+                    ps.setString(2, message.customerID);
+                    ps.setInt(3, message.selling ? 1 : 0);
+                    ps.setString(4, message.itemName);
+                    ps.setInt(5, message.hasDisplayName ? 1 : 0);
+                    ps.setInt(6, message.amount);
+                    ps.setDouble(7, message.totalCost);
+                    ps.setInt(8, message.saleCount);
+                    ps.setLong(9, message.updatedAt);
+                    ps.addBatch();
+                    inserts = true;
+                }
+                if (inserts) {
+                    ps.executeBatch();
+                }
+                for (String ownerID : owners) {
+                    trimMessages(conn, ownerID);
+                }
+            }
+
+            boolean deletions = false;
+            boolean saves = false;
+            PreparedStatement deleteShop = conn.prepare(DELETE_SHOP);
+            PreparedStatement saveShop = conn.prepare(REPLACE_SHOP);
+            for (Map.Entry<UUID, RegisteredShop> e : batch.shops.entrySet()) {
+                RegisteredShop shop = e.getValue();
+                if (shop == null) {
+                    deleteShop.setString(1, e.getKey().toString());
+                    deleteShop.addBatch();
+                    deletions = true;
+                } else {
+                    saveShop.setString(1, shop.getId().toString());
+                    saveShop.setString(2, shop.getWorldID().toString());
+                    saveShop.setInt(3, shop.getX());
+                    saveShop.setInt(4, shop.getY());
+                    saveShop.setInt(5, shop.getZ());
+                    saveShop.setString(6, shop.getType().name());
+                    saveShop.setString(7, shop.getOwnerID().toString());
+                    saveShop.setBoolean(8, shop.isAdmin());
+                    saveShop.setLong(9, shop.getCreatedAt());
+                    saveShop.addBatch();
+                    saves = true;
+                }
+            }
+            if (deletions) {
+                deleteShop.executeBatch();
+            }
+            if (saves) {
+                saveShop.executeBatch();
+            }
+
+            if (!batch.trades.isEmpty()) {
+                ps = conn.prepare(INSERT_TRADE);
+                for (PendingWrites.Trade trade : batch.trades) {
+                    ps.setString(1, trade.shopID);
+                    ps.setString(2, trade.buyerID);
+                    ps.setString(3, trade.sellerID);
+                    ps.setString(4, trade.itemKey);
+                    ps.setInt(5, trade.amount);
+                    ps.setDouble(6, trade.unitPrice);
+                    ps.setLong(7, trade.timestamp);
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            }
+
+            if (!batch.journal.isEmpty()) {
+                boolean journalDeletions = false;
+                boolean journalSaves = false;
+                PreparedStatement deleteJournal = conn.prepare(DELETE_JOURNAL);
+                PreparedStatement saveJournal = conn.prepare(REPLACE_JOURNAL);
+                for (Map.Entry<UUID, PendingWrites.JournalEntry> e : batch.journal.entrySet()) {
+                    PendingWrites.JournalEntry entry = e.getValue();
+                    if (entry == null) {
+                        deleteJournal.setString(1, e.getKey().toString());
+                        deleteJournal.addBatch();
+                        journalDeletions = true;
+                    } else {
+                        saveJournal.setString(1, entry.id);
+                        saveJournal.setString(2, entry.shopID);
+                        saveJournal.setString(3, entry.payer);
+                        saveJournal.setString(4, entry.payee);
+                        saveJournal.setDouble(5, entry.total);
+                        saveJournal.setString(6, entry.state);
+                        saveJournal.setLong(7, entry.createdAt);
+                        saveJournal.setLong(8, entry.updatedAt);
+                        saveJournal.addBatch();
+                        journalSaves = true;
+                    }
+                }
+                if (journalDeletions) {
+                    deleteJournal.executeBatch();
+                }
+                if (journalSaves) {
+                    saveJournal.executeBatch();
+                }
+            }
+            return true;
+        }, false);
+        return committed ? results : null;
+    }
+
+    /**
+     * Deletes the least recently updated messages of the owner beyond
+     * {@link #maxMessagesPerOwner}.
+     */
+    private void trimMessages(PooledConnection conn, String ownerID) throws SQLException {
+        if (maxMessagesPerOwner <= 0) {
+            return;
+        }
+        PreparedStatement ps = conn.prepare(COUNT_MESSAGES);
+        ps.setString(1, ownerID);
+        try (ResultSet rs = ps.executeQuery()) {
+            if (!rs.next() || rs.getInt(1) <= maxMessagesPerOwner) {
+                return;
+            }
+        }
+        List<Long> excess = new ArrayList<>();
+        ps = conn.prepare(SELECT_MESSAGE_IDS);
+        ps.setString(1, ownerID);
+        try (ResultSet rs = ps.executeQuery()) {
+            for (int kept = 0; rs.next(); kept++) {
+                if (kept >= maxMessagesPerOwner) {
+                    excess.add(rs.getLong(1));
+                }
+            }
+        }
+        ps = conn.prepare(DELETE_MESSAGE);
+        for (long id : excess) {
+            ps.setLong(1, id);
+            ps.addBatch();
+        }
+        ps.executeBatch();
+    }
+
+    /**
+     * Deletes offline messages that have not been updated for longer than
+     * {@link #messageTTL}. Runs on the writer thread.
+     */
+    void expireMessages() {
+        if (messageTTL <= 0) {
+            return;
+        }
+        long cutoff = System.currentTimeMillis() - messageTTL;
+        execute(conn -> {
+            PreparedStatement ps = conn.prepare(DELETE_EXPIRED_MESSAGES);
+            ps.setLong(1, cutoff);
+            return ps.executeUpdate();
+        }, 0);
+    }
+
+    private int selectShopCount(PooledConnection conn, String playerID) throws SQLException {
+        PreparedStatement ps = conn.prepare(SELECT_TOTAL_SHOPS_OWNED);
+        ps.setString(1, playerID);
+        try (ResultSet rs = ps.executeQuery()) {
+            return rs.next() ? rs.getInt("total_shops_owned") : 0;
         }
     }
 
+    /**
+     * Returns every shop recorded in the database. Shops with a type that is no
+     * longer known are skipped.
+     *
+     * @return list of shops
+     */
+    public List<RegisteredShop> loadShops() {
+        writeQueue.flushAndWait();
+        return execute(conn -> {
+            List<RegisteredShop> result = new ArrayList<>();
+            PreparedStatement ps = conn.prepare(SELECT_SHOPS);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    ShopType type;
+                    try {
+                        type = ShopType.valueOf(rs.getString("type"));
+                    } catch (IllegalArgumentException ex) {
+                        continue;
+                    }
+                    result.add(new RegisteredShop(UUID.fromString(rs.getString("id")),
+                            UUID.fromString(rs.getString("world")), rs.getInt("x"), rs.getInt("y"), rs.getInt("z"),
+                            type, UUID.fromString(rs.getString("owner")), rs.getBoolean("admin"),
+                            rs.getLong("created_at")));
+                }
+            }
+            return result;
+        }, new ArrayList<>());
+    }
+
+    /**
+     * Records a shop in the database, replacing any shop with the same id or at
+     * the same location.
+     *
+     * @param shop shop to record
+     */
+    public void saveShop(RegisteredShop shop) {
+        writeQueue.enqueue(writes -> writes.saveShop(shop));
+    }
+
+    /**
+     * Removes a shop from the database.
+     *
+     * @param shopID id of the shop
+     */
+    public void deleteShop(UUID shopID) {
+        writeQueue.enqueue(writes -> writes.deleteShop(shopID));
+    }
+
     /**
      * Get messages for shop owner for transaction that occurred while they are
-     * offline. Formatting of messages is handled here, based on configuration in
-     * {@code config.yml}.
+     * offline, most recent first. Sales with the same customer, item and direction
+     * are reported in one message. Formatting of messages is handled here, based
+     * on configuration in {@code config.yml}.
      * 
      * @param ownerID String representation of shop owner's UUID
      * @return list of formatted messages to be sent to owner
      */
     public List<MessageUtils.Message> getMessages(String ownerID) {
-        List<MessageUtils.Message> messages = new ArrayList<>();
+        writeQueue.flushAndWait();
+        return execute(conn -> selectMessages(conn, ownerID), new ArrayList<>());
+    }
+
+    private List<MessageUtils.Message> selectMessages(PooledConnection conn, String ownerID) throws SQLException {
         String sellMessage = LanguageUtils.getString("customer-buy-success-owner");
         String buyMessage = LanguageUtils.getString("customer-sell-success-owner");
-        Connection conn = null;
-        PreparedStatement ps = null;
-        ResultSet rs = null;
-        try {
-            conn = getSQLConnection();
-            ps = conn.prepareStatement("SELECT * FROM " + pendingTransactions + " WHERE player = '" + ownerID + "';");
-            rs = ps.executeQuery();
+        String saleCount = LanguageUtils.getString("offline-sales-count");
+        List<MessageUtils.Message> messages = new ArrayList<>();
+        Map<String, OfflinePlayer> customers = new HashMap<>();
+        PreparedStatement ps = conn.prepare(SELECT_MESSAGES);
+        ps.setString(1, ownerID);
+        ps.setLong(2, messageTTL <= 0 ? 0 : System.currentTimeMillis() - messageTTL);
+        try (ResultSet rs = ps.executeQuery()) {
             while (rs.next()) {
-                OfflinePlayer customer = Bukkit.getOfflinePlayer(UUID.fromString(rs.getString("customer")));
+                OfflinePlayer customer = customers.computeIfAbsent(rs.getString("customer"),
+                        id -> Bukkit.getOfflinePlayer(UUID.fromString(id)));
                 String itemName = rs.getString("item_name");
                 int amount = rs.getInt("amount");
                 double totalCost = rs.getDouble("total_cost");
                 boolean hasDisplayName = rs.getBoolean("has_display_name");
-                Message message;
-                if (rs.getBoolean("selling")) {
-                    message = MessageUtils.getMessage(sellMessage, ownerID, customer, totalCost, itemName,
-                            hasDisplayName, amount);
-                } else {
-                    message = MessageUtils.getMessage(buyMessage, ownerID, customer, totalCost, itemName,
-                            hasDisplayName, amount);
+                int sales = rs.getInt("sale_count");
+                String template = rs.getBoolean("selling") ? sellMessage : buyMessage;
+                if (sales > 1) {
+                    template += String.format(saleCount, sales);
                 }
+                Message message = MessageUtils.getMessage(template, ownerID, customer, totalCost, itemName,
+                        hasDisplayName, amount);
                 messages.add(message);
             }
-            close(ps, rs);
-            ps = conn.prepareStatement("DELETE FROM " + pendingTransactions + " WHERE player = '" + ownerID + "';");
-            ps.executeUpdate();
-        } catch (SQLException ex) {
-            plugin.getLogger().log(Level.SEVERE, Errors.sqlConnectionExecute(), ex);
-        } finally {
-            close(ps, conn);
         }
+        ps = conn.prepare(DELETE_MESSAGES);
+        ps.setString(1, ownerID);
+        ps.executeUpdate();
         return messages;
     }
-
-    /**
-     * Releases both the {@link PreparedStatement} and {@link ResultSet} of the
-     * database.
-     *
-     * @param ps PreparedStatement of the database
-     * @param rs ResultSet of the database
-     */
-    public void close(PreparedStatement ps, ResultSet rs) {
-        try {
-            if (ps != null)
-                ps.close();
-            if (rs != null)
-                rs.close();
-        } catch (SQLException ex) {
-            plugin.getLogger().log(Level.SEVERE, Errors.sqlConnectionClose(), ex);
-        }
-    }
-
-    /**
-     * Close {@link PreparedStatement} and {@link Connection} to the database.
-     *
-     * @param ps   PreparedStatement of the database
-     * @param conn Connection to the database
-     */
-    public void close(PreparedStatement ps, Connection conn) {
-        try {
-            if (ps != null)
-                ps.close();
-            if (conn != null)
-                conn.close();
-        } catch (SQLException ex) {
-            plugin.getLogger().log(Level.SEVERE, Errors.sqlConnectionClose(), ex);
-        }
-    }
-}
\ No newline at end of file
+}
@@ -0,0 +1,107 @@
+/*
+ *  This file is part of CustomShop. Copyright (c) 2021 Paratopia.
+ *
+ *  CustomShop is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  CustomShop is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with CustomShop. If not, see <https://www.gnu.org/licenses/>.
+ *
+ */
+package com.paratopiamc.customshop.database;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * A single numbered change to the database schema. Migrations are applied in
+ * ascending order of version by {@link Database#load()}, and every migration
+ * that is applied is recorded in the {@code schema_version} table so that it is
+ * never applied twice. Steps are nonetheless written to be idempotent, as not
+ * every database rolls back schema changes along with the transaction.
+ */
+final class Migration {
+    /** Schema change executed by a migration. */
+    @FunctionalInterface
+    interface Step {
+        void apply(Connection conn, Statement statement) throws SQLException;
+    }
+
+    final int version;
+    final String description;
+    final Step step;
+
+    Migration(int version, String description, Step step) {
+        this.version = version;
+        this.description = description;
+        this.step = step;
+    }
+
+    /**
+     * Returns a migration that executes the given statements in order.
+     *
+     * @param version     version of the schema after the migration
+     * @param description summary of the change
+     * @param statements  SQL statements to execute
+     * @return migration
+     */
+    static Migration of(int version, String description, String... statements) {
+        return new Migration(version, description, (conn, statement) -> {
+            for (String sql : statements) {
+                statement.executeUpdate(sql);
+            }
+        });
+    }
+
+    /**
+     * Checks if the table has the given column.
+     *
+     * @param conn   connection to the database
+     * @param table  name of table
+     * @param column name of column
+     * @return {@code true} if the column exists
+     * @throws SQLException if the metadata cannot be read
+     */
+    static boolean hasColumn(Connection conn, String table, String column) throws SQLException {
+        DatabaseMetaData metaData = conn.getMetaData();
+        try (ResultSet rs = metaData.getColumns(null, null, table, null)) {
+            while (rs.next()) {
+                if (rs.getString("COLUMN_NAME").equalsIgnoreCase(column)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks if the table has an index of the given name.
+     *
+     * @param conn  connection to the database
+     * @param table name of table
+     * @param index name of index
+     * @return {@code true} if the index exists
+     * @throws SQLException if the metadata cannot be read
+     */
+    static boolean hasIndex(Connection conn, String table, String index) throws SQLException {
+        DatabaseMetaData metaData = conn.getMetaData();
+        try (ResultSet rs = metaData.getIndexInfo(null, null, table, false, false)) {
+            while (rs.next()) {
+                if (index.equalsIgnoreCase(rs.getString("INDEX_NAME"))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ *  This file is part of CustomShop. Copyright (c) 2021 Paratopia.
+ *
+ *  CustomShop is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  CustomShop is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with CustomShop. If not, see <https://www.gnu.org/licenses/>.
+ *
+ */
+package com.paratopiamc.customshop.database;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Logger;
+import com.paratopiamc.customshop.plugin.CustomShop;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.MemoryConfiguration;
+
+/**
+ * Database connection operations handled by MySQL or MariaDB, for networks of
+ * servers that share shop counts, unlocked shops and offline messages.
+ */
+public class MySQL extends Database {
+    private static final String UPSERT_TOTAL_SHOPS_OWNED = "INSERT INTO " + totalShopOwned
+            + " (player,total_shops_owned) VALUES(?,?) ON DUPLICATE KEY UPDATE"
+            + " total_shops_owned = total_shops_owned + VALUES(total_shops_owned);";
+    private static final String INSERT_UNLOCKED_SHOP = "INSERT IGNORE INTO " + shopsUnlocked
+            + " (player,shops_unlocked) VALUES(?,?);";
+    // Server-side prepared statements are cached by the driver on top of the
+    // statements cached by each pooled connection.
+    private static final String CONNECTION_PROPERTIES = "useServerPrepStmts=true&cachePrepStmts=true"
+            + "&prepStmtCacheSize=64&rewriteBatchedStatements=true&characterEncoding=utf8";
+    // Versions 1 to 3 only bring SQLite databases from older releases up to date,
+    // so MySQL databases are created straight at version 4.
+    private static final List<Migration> MIGRATIONS = Arrays.asList(
+            Migration.of(4, "Create tables",
+                    "CREATE TABLE IF NOT EXISTS " + totalShopOwned + " (player VARCHAR(36) NOT NULL, "
+                            + "total_shops_owned INT NOT NULL, PRIMARY KEY (player));",
+                    "CREATE TABLE IF NOT EXISTS " + shopsUnlocked + " (player VARCHAR(36) NOT NULL, "
+                            + "shops_unlocked INT NOT NULL, PRIMARY KEY (player, shops_unlocked));",
+                    "CREATE TABLE IF NOT EXISTS " + pendingTransactions + " (id BIGINT NOT NULL AUTO_INCREMENT, "
+                            + "player VARCHAR(36) NOT NULL, customer VARCHAR(36) NOT NULL, selling INT NOT NULL, "
+                            + "item_name TEXT NOT NULL, has_display_name INT NOT NULL, amount INT NOT NULL, "
+                            + "total_cost DOUBLE NOT NULL, PRIMARY KEY (id), INDEX idx_" + pendingTransactions
+                            + "_player (player));"),
+            Migration.of(5, "Create " + shops + " table",
+                    "CREATE TABLE IF NOT EXISTS " + shops + " (id VARCHAR(36) NOT NULL, world VARCHAR(36) NOT NULL, "
+                            + "x INT NOT NULL, y INT NOT NULL, z INT NOT NULL, type VARCHAR(32) NOT NULL, "
+                            + "owner VARCHAR(36) NOT NULL, admin INT NOT NULL, created_at BIGINT NOT NULL, "
+                            + "PRIMARY KEY (id), INDEX idx_" + shops + "_owner (owner), UNIQUE KEY idx_" + shops
+                            + "_location (world, x, y, z));"),
+            Migration.of(6, "Create " + transactions + " ledger",
+                    "CREATE TABLE IF NOT EXISTS " + transactions + " (id BIGINT NOT NULL AUTO_INCREMENT, "
+                            + "shop_id VARCHAR(36), buyer VARCHAR(36) NOT NULL, seller VARCHAR(36) NOT NULL, "
+                            + "item_key VARCHAR(255) NOT NULL, amount INT NOT NULL, unit_price DOUBLE NOT NULL, "
+                            + "created_at BIGINT NOT NULL, PRIMARY KEY (id), INDEX idx_" + transactions
+                            + "_shop (shop_id), INDEX idx_" + transactions + "_created (created_at));"),
+            new Migration(7, "Coalesce " + pendingTransactions, (conn, statement) -> {
+                if (!Migration.hasColumn(conn, pendingTransactions, "sale_count")) {
+                    statement.executeUpdate("ALTER TABLE " + pendingTransactions
+                            + " ADD COLUMN sale_count INT NOT NULL DEFAULT 1;");
+                }
+                if (!Migration.hasColumn(conn, pendingTransactions, "updated_at")) {
+                    statement.executeUpdate("ALTER TABLE " + pendingTransactions
+                            + " ADD COLUMN updated_at BIGINT NOT NULL DEFAULT 0;");
+                }
+                statement.executeUpdate("UPDATE " + pendingTransactions + " SET updated_at = "
+                        + System.currentTimeMillis() + " WHERE updated_at = 0;");
+                if (!Migration.hasIndex(conn, pendingTransactions, "idx_" + pendingTransactions + "_updated")) {
+                    statement.executeUpdate("CREATE INDEX idx_" + pendingTransactions + "_updated ON "
+                            + pendingTransactions + " (updated_at);");
+                }
+            }),
+            Migration.of(8, "Create " + tradeJournal + " table",
+                    "CREATE TABLE IF NOT EXISTS " + tradeJournal + " (id VARCHAR(36) NOT NULL, shop_id VARCHAR(36), "
+                            + "payer VARCHAR(36), payee VARCHAR(36), total DOUBLE NOT NULL, "
+                            + "state VARCHAR(16) NOT NULL, created_at BIGINT NOT NULL, updated_at BIGINT NOT NULL, "
+                            + "PRIMARY KEY (id));"));
+
+    /** Whether loading the MySQL JDBC driver has been attempted. */
+    private static boolean driverLoaded;
+
+    private final String url;
+    private final String user;
+    private final String password;
+    private final int poolSize;
+
+    /**
+     * Constructor for a database configured in the {@code database.mysql} section
+     * of {@code config.yml}.
+     *
+     * @param instance plugin instance
+     */
+    public MySQL(CustomShop instance) {
+        super(instance);
+        ConfigurationSection config = instance.getConfig().getConfigurationSection("database.mysql");
+        if (config == null) {
+            instance.getLogger().warning("Section database.mysql is missing from config.yml, connecting with"
+                    + " default settings to database customshop at localhost:3306 as root.");
+            config = new MemoryConfiguration();
+        }
+        this.url = "jdbc:mysql://" + config.getString("host", "localhost") + ":" + config.getInt("port", 3306)
+                + "/" + config.getString("name", "customshop") + "?useSSL=" + config.getBoolean("use-ssl", false)
+                + "&" + CONNECTION_PROPERTIES;
+        this.user = config.getString("user", "root");
+        this.password = config.getString("password", "");
+        this.poolSize = config.getInt("pool-size", 4);
+    }
+
+    /**
+     * Constructor for a database at an explicit JDBC url, without a plugin
+     * instance.
+     *
+     * @param url      JDBC url of the database
+     * @param user     user name
+     * @param password password
+     * @param poolSize maximum number of connections
+     * @param logger   logger for failed statements
+     */
+    MySQL(String url, String user, String password, int poolSize, Logger logger) {
+        super(null, logger, 500, 200);
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.poolSize = poolSize;
+    }
+
+    @Override
+    Connection openConnection() throws SQLException {
+        if (!driverLoaded) {
+            loadDriver();
+            driverLoaded = true;
+        }
+        return DriverManager.getConnection(url, user, password);
+    }
+
+    @Override
+    int poolSize() {
+        return poolSize;
+    }
+
+    @Override
+    String upsertShopCountStatement() {
+        return UPSERT_TOTAL_SHOPS_OWNED;
+    }
+
+    @Override
+    String insertUnlockedShopStatement() {
+        return INSERT_UNLOCKED_SHOP;
+    }
+
+    @Override
+    List<Migration> migrations() {
+        return MIGRATIONS;
+    }
+
+    /**
+     * Loads the MySQL JDBC driver. Servers bundle either the current driver or the
+     * legacy one, depending on their version. If neither is found, the driver is
+     * left for {@link DriverManager} to discover.
+     */
+    private static void loadDriver() {
+        for (String driver : new String[] { "com.mysql.cj.jdbc.Driver", "com.mysql.jdbc.Driver" }) {
+            try {
+                Class.forName(driver);
+                return;
+            } catch (ClassNotFoundException ex) {
+                // Try the next driver.
+            }
+        }
+    }
+}
@@ -0,0 +1,301 @@
+/*
+ *  This file is part of CustomShop. Copyright (c) 2021 Paratopia.
+ *
+ *  CustomShop is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  CustomShop is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with CustomShop. If not, see <https://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.paratopiamc.customshop.database;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import com.paratopiamc.customshop.shop.RegisteredShop;
+import com.paratopiamc.customshop.shop.TradePipeline;
+
+/**
+ * Writes accumulated by {@link WriteBehindQueue} between two commits. Writes to
+ * the same row are coalesced as they are added, so that a batch holds at most
+ * one shop count and one set of unlocked shop changes per player, and at most
+ * one message per owner, customer, item and direction.
+ */
+class PendingWrites {
+    /**
+     * Pending change to a player's total shop count. {@code absolute} is the
+     * value last set through {@link Database#setShopsOwned(UUID, int)}, if any,
+     * and {@code delta} is the sum of increments and decrements applied after it.
+     * Every individual change is also kept in order, so that each caller can be
+     * told the count right after its own change once the batch is committed.
+     */
+    static class ShopCount {
+        Integer absolute;
+        int delta;
+        final List<Change> changes = new ArrayList<>();
+    }
+
+    /** A single increment, decrement or reset of a shop count. */
+    static class Change {
+        final boolean absolute;
+        final int value;
+        final CompletableFuture<Integer> result;
+
+        Change(boolean absolute, int value) {
+            this.absolute = absolute;
+            this.value = value;
+            this.result = new CompletableFuture<>();
+        }
+    }
+
+    /**
+     * Pending change to a player's unlocked shops. If {@code replace} is set, all
+     * existing rows of the player are deleted first; otherwise only the models in
+     * {@code removed} are. Models in {@code added} are then inserted.
+     */
+    static class UnlockChange {
+        boolean replace;
+        final Set<Integer> added = new LinkedHashSet<>();
+        final Set<Integer> removed = new LinkedHashSet<>();
+    }
+
+    /**
+     * Offline transaction message, flattened from its {@code ItemStack}. Messages
+     * with the same owner, customer, item and direction are merged into one,
+     * summing their amounts and costs.
+     */
+    static class Message {
+        final String ownerID;
+        final String customerID;
+        final boolean selling;
+        final String itemName;
+        final boolean hasDisplayName;
+        int amount;
+        double totalCost;
+        int saleCount;
+        long updatedAt;
+
+        Message(String ownerID, String customerID, boolean selling, String itemName, boolean hasDisplayName,
+                int amount, double totalCost, long updatedAt) {
+            this.ownerID = ownerID;
+            this.customerID = customerID;
+            this.selling = selling;
+            this.itemName = itemName;
+            this.hasDisplayName = hasDisplayName;
+            this.amount = amount;
+            this.totalCost = totalCost;
+            this.saleCount = 1;
+            this.updatedAt = updatedAt;
+        }
+
+        String key() {
+            return ownerID + ":" + customerID + ":" + selling + ":" + hasDisplayName + ":" + itemName;
+        }
+
+        void merge(Message other) {
+            this.amount += other.amount;
+            this.totalCost += other.totalCost;
+            this.saleCount += other.saleCount;
+            this.updatedAt = Math.max(this.updatedAt, other.updatedAt);
+        }
+    }
+
+    /** Completed trade, appended to the transactions ledger. */
+    static class Trade {
+        final String shopID;
+        final String buyerID;
+        final String sellerID;
+        final String itemKey;
+        final int amount;
+        final double unitPrice;
+        final long timestamp;
+
+        Trade(String shopID, String buyerID, String sellerID, String itemKey, int amount, double unitPrice,
+                long timestamp) {
+            this.shopID = shopID;
+            this.buyerID = buyerID;
+            this.sellerID = sellerID;
+            this.itemKey = itemKey;
+            this.amount = amount;
+            this.unitPrice = unitPrice;
+            this.timestamp = timestamp;
+        }
+    }
+
+    /**
+     * Trade journal row, flattened from its {@code TradePipeline.Trade} at the
+     * state it had when the write was made.
+     */
+    static class JournalEntry {
+        final String id;
+        final String shopID;
+        final String payer;
+        final String payee;
+        final double total;
+        final String state;
+        final long createdAt;
+        final long updatedAt;
+
+        JournalEntry(TradePipeline.Trade trade, long updatedAt) {
+            this.id = trade.getId().toString();
+            this.shopID = trade.getShopID() == null ? null : trade.getShopID().toString();
+            this.payer = trade.getPayer() == null ? null : trade.getPayer().toString();
+            this.payee = trade.getPayee() == null ? null : trade.getPayee().toString();
+            this.total = trade.getTotal();
+            this.state = trade.getState().name();
+            this.createdAt = trade.getCreatedAt();
+            this.updatedAt = updatedAt;
+        }
+    }
+
+    final Map<UUID, ShopCount> shopCounts = new HashMap<>();
+    final Map<UUID, UnlockChange> unlockedShops = new HashMap<>();
+    /** Offline transaction messages, by {@link Message#key()}. */
+    final Map<String, Message> messages = new LinkedHashMap<>();
+    final List<Trade> trades = new ArrayList<>();
+    /** Shops to save, by id. A {@code null} value marks a shop to delete. */
+    final Map<UUID, RegisteredShop> shops = new HashMap<>();
+    /** Trade journal rows to save, by trade id. A {@code null} value marks a row to delete. */
+    final Map<UUID, JournalEntry> journal = new HashMap<>();
+    /** Completed with whether the batch was committed, for writers waiting on it. */
+    final List<CompletableFuture<Boolean>> journalResults = new ArrayList<>();
+    /** Reads to run on the writer thread right after the batch is committed. */
+    final List<Runnable> reads = new ArrayList<>();
+    /** Number of writes added, before coalescing. */
+    int operations;
+
+    CompletableFuture<Integer> addShopDelta(UUID playerID, int delta) {
+        ShopCount count = shopCounts.computeIfAbsent(playerID, k -> new ShopCount());
+        Change change = new Change(false, delta);
+        count.delta += delta;
+        count.changes.add(change);
+        operations++;
+        return change.result;
+    }
+
+    CompletableFuture<Integer> setShopCount(UUID playerID, int number) {
+        ShopCount count = shopCounts.computeIfAbsent(playerID, k -> new ShopCount());
+        Change change = new Change(true, number);
+        count.absolute = number;
+        count.delta = 0;
+        count.changes.add(change);
+        operations++;
+        return change.result;
+    }
+
+    void setUnlockedShops(UUID playerID, Collection<Integer> unlocked) {
+        UnlockChange change = new UnlockChange();
+        change.replace = true;
+        change.added.addAll(unlocked);
+        unlockedShops.put(playerID, change);
+        operations++;
+    }
+
+    void addUnlockedShop(UUID playerID, int model) {
+        UnlockChange change = unlockedShops.computeIfAbsent(playerID, k -> new UnlockChange());
+        change.removed.remove(model);
+        change.added.add(model);
+        operations++;
+    }
+
+    void removeUnlockedShops(UUID playerID, Collection<Integer> models) {
+        UnlockChange change = unlockedShops.computeIfAbsent(playerID, k -> new UnlockChange());
+        change.added.removeAll(models);
+        if (!change.replace) {
+            change.removed.addAll(models);
+        }
+        operations++;
+    }
+
+    void saveShop(RegisteredShop shop) {
+        shops.put(shop.getId(), shop);
+        operations++;
+    }
+
+    void deleteShop(UUID shopID) {
+        shops.put(shopID, null);
+        operations++;
+    }
+
+    CompletableFuture<Boolean> saveJournal(JournalEntry entry) {
+        CompletableFuture<Boolean> result = new CompletableFuture<>();
+        journal.put(UUID.fromString(entry.id), entry);
+        journalResults.add(result);
+        operations++;
+        return result;
+    }
+
+    void deleteJournal(UUID tradeID) {
+        journal.put(tradeID, null);
+        operations++;
+    }
+
+    void addTrade(Trade trade) {
+        trades.add(trade);
+        operations++;
+    }
+
+    void addMessage(Message message) {
+        Message existing = messages.putIfAbsent(message.key(), message);
+        if (existing != null) {
+            existing.merge(message);
+        }
+        operations++;
+    }
+
+    boolean isEmpty() {
+        return operations == 0;
+    }
+
+    /**
+     * Completes the futures of the writes once the batch is either committed or
+     * discarded. Journal writes are told whether they were committed, and shop
+     * count changes are completed exceptionally if they were not.
+     *
+     * @param results shop count right after each change, {@code null} if the
+     *                batch was discarded
+     */
+    void complete(Map<Change, Integer> results) {
+        for (CompletableFuture<Boolean> result : journalResults) {
+            result.complete(results != null);
+        }
+        for (ShopCount count : shopCounts.values()) {
+            for (Change change : count.changes) {
+                if (results != null) {
+                    change.result.complete(results.get(change));
+                } else {
+                    change.result.completeExceptionally(new SQLException("Shop count update was discarded"));
+                }
+            }
+        }
+    }
+
+    /**
+     * Summarizes the writes, for logging a batch that had to be discarded.
+     *
+     * @return summary of the writes
+     */
+    String describe() {
+        return shopCounts.size() + " shop count(s) " + shopCounts.keySet() + ", " + unlockedShops.size()
+                + " unlocked shop change(s) " + unlockedShops.keySet() + ", " + messages.size()
+                + " offline message(s), " + trades.size() + " ledger row(s), " + shops.size() + " shop(s), "
+                + journal.size() + " journal row(s) " + journal.keySet();
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ *  This file is part of CustomShop. Copyright (c) 2021 Paratopia.
+ *
+ *  CustomShop is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  CustomShop is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with CustomShop. If not, see <https://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.paratopiamc.customshop.database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A long-lived JDBC connection handed out by {@link ConnectionPool}. Each
+ * pooled connection caches one {@link PreparedStatement} per query shape (its
+ * SQL text), so that a statement is only parsed once for the lifetime of the
+ * connection. A pooled connection is only ever used by one thread at a time,
+ * hence the cache does not need to be synchronized.
+ */
+public class PooledConnection {
+    /** Milliseconds a connection may sit idle before it is validated on borrow. */
+    private static final long VALIDATE_AFTER = 30000;
+
+    private final Connection connection;
+    private final Map<String, PreparedStatement> statements;
+    private long idleSince;
+
+    PooledConnection(Connection connection) {
+        this.connection = connection;
+        this.statements = new HashMap<>();
+        this.idleSince = System.currentTimeMillis();
+    }
+
+    /**
+     * Returns the cached statement for the given SQL text, preparing it on first
+     * use. Parameters and batches left by a previous user of the statement are
+     * cleared.
+     *
+     * @param sql SQL text with {@code ?} placeholders
+     * @return prepared statement ready for parameter binding
+     * @throws SQLException if the statement cannot be prepared
+     */
+    public PreparedStatement prepare(String sql) throws SQLException {
+        PreparedStatement ps = statements.get(sql);
+        if (ps == null || ps.isClosed()) {
+            ps = connection.prepareStatement(sql);
+            statements.put(sql, ps);
+        } else {
+            ps.clearParameters();
+            ps.clearBatch();
+        }
+        return ps;
+    }
+
+    /**
+     * Returns the underlying connection, for operations that are not covered by
+     * {@link #prepare(String)} such as transaction control.
+     *
+     * @return underlying JDBC connection
+     */
+    public Connection getConnection() {
+        return this.connection;
+    }
+
+    /**
+     * Whether the underlying connection can still be used. A connection that has
+     * been idle for a while is also checked with the server, as remote databases
+     * drop idle connections without the driver noticing.
+     *
+     * @return {@code true} if the connection is open
+     */
+    boolean isUsable() {
+        try {
+            if (connection.isClosed()) {
+                return false;
+            }
+            return System.currentTimeMillis() - idleSince < VALIDATE_AFTER || connection.isValid(2);
+        } catch (SQLException ex) {
+            return false;
+        }
+    }
+
+    /** Records that the connection was just returned to the pool. */
+    void markIdle() {
+        this.idleSince = System.currentTimeMillis();
+    }
+
+    /**
+     * Closes all cached statements followed by the connection itself.
+     *
+     * @throws SQLException if the connection cannot be closed
+     */
+    void close() throws SQLException {
+        for (PreparedStatement ps : statements.values()) {
+            try {
+                ps.close();
+            } catch (SQLException ex) {
+                // Closing the connection below releases the statement regardless.
+            }
+        }
+        statements.clear();
+        connection.close();
+    }
+}
@@ -23,7 +23,8 @@ import java.io.IOException;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
-import java.sql.Statement;
+import java.util.Arrays;
+import java.util.List;
 import java.util.logging.Level;
 import com.paratopiamc.customshop.plugin.CustomShop;
 
@@ -32,21 +33,94 @@ import com.paratopiamc.customshop.plugin.CustomShop;
  */
 public class SQLite extends Database {
     // Player is 36 characters as we are using UUID to represent a player.
-    private String SQLiteCreateTotalShopsOwnedTable = "CREATE TABLE IF NOT EXISTS " + totalShopOwned
-            + " (`player` varchar(36) NOT NULL, `total_shops_owned` INTEGER NOT NULL, PRIMARY KEY (`player`));";
-    private String SQLiteCreateShopsUnlockedTable = "CREATE TABLE IF NOT EXISTS " + shopsUnlocked
-            + " (`player` varchar(36) NOT NULL, `shops_unlocked` INTEGER NOT NULL);";
-    private String SQLiteCreatePendingTransactionMessagesTable = "CREATE TABLE IF NOT EXISTS " + pendingTransactions
-            + " (`player` varchar(36) NOT NULL, `customer` varchar(36) NOT NULL, `selling` INTEGER NOT NULL, "
-            + "`item_name` TEXT NOT NULL, `has_display_name` INTEGER NOT NULL, `amount` INTEGER NOT NULL, "
-            + "`total_cost` REAL NOT NULL);";
+    private static final List<Migration> MIGRATIONS = Arrays.asList(
+            Migration.of(1, "Create tables",
+                    "CREATE TABLE IF NOT EXISTS " + totalShopOwned + " (`player` varchar(36) NOT NULL, "
+                            + "`total_shops_owned` INTEGER NOT NULL, PRIMARY KEY (`player`));",
+                    "CREATE TABLE IF NOT EXISTS " + shopsUnlocked + " (`player` varchar(36) NOT NULL, "
+                            + "`shops_unlocked` INTEGER NOT NULL);",
+                    "CREATE TABLE IF NOT EXISTS " + pendingTransactions + " (`player` varchar(36) NOT NULL, "
+                            + "`customer` varchar(36) NOT NULL, `selling` INTEGER NOT NULL, "
+                            + "`item_name` TEXT NOT NULL, `has_display_name` INTEGER NOT NULL, "
+                            + "`amount` INTEGER NOT NULL, `total_cost` REAL NOT NULL);"),
+            // Tables created before 1.5 lack this column. It used to be fixed by dropping
+            // the table, which lost every queued message.
+            new Migration(2, "Add missing has_display_name column", (conn, statement) -> {
+                if (!Migration.hasColumn(conn, pendingTransactions, "has_display_name")) {
+                    statement.executeUpdate("ALTER TABLE " + pendingTransactions
+                            + " ADD COLUMN `has_display_name` INTEGER NOT NULL DEFAULT 0;");
+                }
+            }),
+            // SQLite cannot add a primary key to an existing table, so the table is
+            // rebuilt. Duplicate rows left by older versions are dropped on the way.
+            Migration.of(3, "Add primary key to " + shopsUnlocked,
+                    "DROP TABLE IF EXISTS " + shopsUnlocked + "_new;",
+                    "CREATE TABLE " + shopsUnlocked + "_new (`player` varchar(36) NOT NULL, "
+                            + "`shops_unlocked` INTEGER NOT NULL, PRIMARY KEY (`player`, `shops_unlocked`));",
+                    "INSERT OR IGNORE INTO " + shopsUnlocked + "_new (player,shops_unlocked) "
+                            + "SELECT player,shops_unlocked FROM " + shopsUnlocked + ";",
+                    "DROP TABLE " + shopsUnlocked + ";",
+                    "ALTER TABLE " + shopsUnlocked + "_new RENAME TO " + shopsUnlocked + ";"),
+            Migration.of(4, "Add primary key and player index to " + pendingTransactions,
+                    "DROP TABLE IF EXISTS " + pendingTransactions + "_new;",
+                    "CREATE TABLE " + pendingTransactions + "_new (`id` INTEGER PRIMARY KEY AUTOINCREMENT, "
+                            + "`player` varchar(36) NOT NULL, `customer` varchar(36) NOT NULL, "
+                            + "`selling` INTEGER NOT NULL, `item_name` TEXT NOT NULL, "
+                            + "`has_display_name` INTEGER NOT NULL, `amount` INTEGER NOT NULL, "
+                            + "`total_cost` REAL NOT NULL);",
+                    "INSERT INTO " + pendingTransactions + "_new (player,customer,selling,item_name,"
+                            + "has_display_name,amount,total_cost) SELECT player,customer,selling,item_name,"
+                            + "has_display_name,amount,total_cost FROM " + pendingTransactions + " ORDER BY rowid;",
+                    "DROP TABLE " + pendingTransactions + ";",
+                    "ALTER TABLE " + pendingTransactions + "_new RENAME TO " + pendingTransactions + ";",
+                    "CREATE INDEX IF NOT EXISTS idx_" + pendingTransactions + "_player ON " + pendingTransactions
+                            + " (`player`);"),
+            Migration.of(5, "Create " + shops + " table",
+                    "CREATE TABLE IF NOT EXISTS " + shops + " (`id` varchar(36) NOT NULL, "
+                            + "`world` varchar(36) NOT NULL, `x` INTEGER NOT NULL, `y` INTEGER NOT NULL, "
+                            + "`z` INTEGER NOT NULL, `type` varchar(32) NOT NULL, `owner` varchar(36) NOT NULL, "
+                            + "`admin` INTEGER NOT NULL, `created_at` INTEGER NOT NULL, PRIMARY KEY (`id`));",
+                    "CREATE INDEX IF NOT EXISTS idx_" + shops + "_owner ON " + shops + " (`owner`);",
+                    "CREATE UNIQUE INDEX IF NOT EXISTS idx_" + shops + "_location ON " + shops
+                            + " (`world`, `x`, `y`, `z`);"),
+            Migration.of(6, "Create " + transactions + " ledger",
+                    "CREATE TABLE IF NOT EXISTS " + transactions + " (`id` INTEGER PRIMARY KEY AUTOINCREMENT, "
+                            + "`shop_id` varchar(36), `buyer` varchar(36) NOT NULL, `seller` varchar(36) NOT NULL, "
+                            + "`item_key` TEXT NOT NULL, `amount` INTEGER NOT NULL, `unit_price` REAL NOT NULL, "
+                            + "`created_at` INTEGER NOT NULL);",
+                    "CREATE INDEX IF NOT EXISTS idx_" + transactions + "_shop ON " + transactions + " (`shop_id`);",
+                    "CREATE INDEX IF NOT EXISTS idx_" + transactions + "_created ON " + transactions
+                            + " (`created_at`);"),
+            // Existing rows count as a single sale each, last updated now.
+            new Migration(7, "Coalesce " + pendingTransactions, (conn, statement) -> {
+                if (!Migration.hasColumn(conn, pendingTransactions, "sale_count")) {
+                    statement.executeUpdate("ALTER TABLE " + pendingTransactions
+                            + " ADD COLUMN `sale_count` INTEGER NOT NULL DEFAULT 1;");
+                }
+                if (!Migration.hasColumn(conn, pendingTransactions, "updated_at")) {
+                    statement.executeUpdate("ALTER TABLE " + pendingTransactions
+                            + " ADD COLUMN `updated_at` INTEGER NOT NULL DEFAULT 0;");
+                }
+                statement.executeUpdate("UPDATE " + pendingTransactions + " SET updated_at = "
+                        + System.currentTimeMillis() + " WHERE updated_at = 0;");
+                statement.executeUpdate("CREATE INDEX IF NOT EXISTS idx_" + pendingTransactions + "_updated ON "
+                        + pendingTransactions + " (`updated_at`);");
+            }),
+            Migration.of(8, "Create " + tradeJournal + " table",
+                    "CREATE TABLE IF NOT EXISTS " + tradeJournal + " (`id` varchar(36) NOT NULL, "
+                            + "`shop_id` varchar(36), `payer` varchar(36), `payee` varchar(36), "
+                            + "`total` REAL NOT NULL, `state` varchar(16) NOT NULL, `created_at` INTEGER NOT NULL, "
+                            + "`updated_at` INTEGER NOT NULL, PRIMARY KEY (`id`));"));
+
+    /** Whether the SQLite JDBC driver has been loaded. */
+    private static boolean driverLoaded;
 
     public SQLite(CustomShop instance) {
         super(instance);
     }
 
     @Override
-    public Connection getSQLConnection() {
+    Connection openConnection() throws SQLException {
         File dataFolder = new File(plugin.getDataFolder(), dbname + ".db");
         if (!dataFolder.exists()) {
             try {
@@ -55,33 +129,21 @@ public class SQLite extends Database {
                 plugin.getLogger().log(Level.SEVERE, "File write error: " + dbname + ".db");
             }
         }
-        try {
-            if (connection != null && !connection.isClosed()) {
-                return connection;
+        if (!driverLoaded) {
+            try {
+                Class.forName("org.sqlite.JDBC");
+                driverLoaded = true;
+            } catch (ClassNotFoundException ex) {
+                plugin.getLogger().log(Level.SEVERE,
+                        "You need the SQLite JBDC library. Google it. Put it in /lib folder.");
+                throw new SQLException("SQLite driver not found", ex);
             }
-            Class.forName("org.sqlite.JDBC");
-            connection = DriverManager.getConnection("jdbc:sqlite:" + dataFolder);
-            return connection;
-        } catch (SQLException ex) {
-            plugin.getLogger().log(Level.SEVERE, "SQLite exception on initialize", ex);
-        } catch (ClassNotFoundException ex) {
-            plugin.getLogger().log(Level.SEVERE, "You need the SQLite JBDC library. Google it. Put it in /lib folder.");
         }
-        return null;
+        return DriverManager.getConnection("jdbc:sqlite:" + dataFolder);
     }
 
     @Override
-    public void load() {
-        connection = getSQLConnection();
-        try {
-            Statement s = connection.createStatement();
-            s.executeUpdate(SQLiteCreateTotalShopsOwnedTable);
-            s.executeUpdate(SQLiteCreateShopsUnlockedTable);
-            s.executeUpdate(SQLiteCreatePendingTransactionMessagesTable);
-            s.close();
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
-        initialize();
+    List<Migration> migrations() {
+        return MIGRATIONS;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,251 @@
+/*
+ *  This file is part of CustomShop. Copyright (c) 2021 Paratopia.
+ *
+ *  CustomShop is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  CustomShop is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with CustomShop. If not, see <https://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.paratopiamc.customshop.database;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Single-writer, write-behind queue for database updates. Writes are coalesced
+ * in memory and committed together in one transaction, either every
+ * {@code flushInterval} milliseconds or as soon as {@code maxOperations} writes
+ * are pending, whichever comes first. Commits happen on the queue's own writer
+ * thread, or on the calling thread once the queue is shut down, but never two
+ * at a time, so no two batches ever race each other.
+ */
+public class WriteBehindQueue {
+    /** Attempts at committing a batch before it is discarded. */
+    private static final int MAX_ATTEMPTS = 3;
+    /** Milliseconds to wait before the first retry, doubled on every retry. */
+    private static final long RETRY_DELAY = 250;
+    private final Database database;
+    private final Logger logger;
+    private final int maxOperations;
+    private final ScheduledExecutorService writer;
+    private PendingWrites pending;
+    /** Batches closed by {@link #read(Supplier)}, to be committed before {@link #pending}. */
+    private final Queue<PendingWrites> sealed = new ArrayDeque<>();
+    private volatile Thread writerThread;
+    /**
+     * Held while draining and committing batches, so that a flush run on the
+     * calling thread once the writer is shut down never overlaps a commit still
+     * running on the writer thread.
+     */
+    private final Object commitLock = new Object();
+
+    /**
+     * Constructor for the queue. The writer thread starts immediately.
+     *
+     * @param database      database to commit batches to
+     * @param logger        logger for failed commits
+     * @param flushInterval milliseconds between two scheduled commits
+     * @param maxOperations pending writes that trigger an early commit
+     */
+    WriteBehindQueue(Database database, Logger logger, long flushInterval, int maxOperations) {
+        this.database = database;
+        this.logger = logger;
+        this.maxOperations = Math.max(1, maxOperations);
+        this.pending = new PendingWrites();
+        this.writer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            writerThread = new Thread(runnable, "CustomShop-DB-Writer");
+            writerThread.setDaemon(true);
+            return writerThread;
+        });
+        long interval = Math.max(1, flushInterval);
+        this.writer.scheduleWithFixedDelay(this::flush, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Adds a write to the current batch. Triggers an early commit if the batch
+     * has grown past its limit.
+     *
+     * @param write mutation of the pending batch
+     */
+    void enqueue(Consumer<PendingWrites> write) {
+        enqueue(writes -> {
+            write.accept(writes);
+            return null;
+        }, false);
+    }
+
+    /**
+     * Adds a write to the current batch and returns whatever the write returns.
+     * If {@code urgent}, the batch is committed right away instead of waiting for
+     * the next scheduled commit, for writes whose outcome a player is waiting on.
+     *
+     * @param write  mutation of the pending batch
+     * @param urgent whether to commit without waiting for the flush interval
+     * @return result of {@code write}
+     */
+    <T> T enqueue(Function<PendingWrites, T> write, boolean urgent) {
+        T result;
+        boolean full;
+        synchronized (this) {
+            result = write.apply(pending);
+            full = pending.operations >= maxOperations;
+        }
+        if ((full || urgent) && !writer.isShutdown()) {
+            writer.execute(this::flush);
+        }
+        return result;
+    }
+
+    /**
+     * Runs a maintenance task on the writer thread every {@code period}
+     * milliseconds, so that it never races a commit.
+     *
+     * @param task   task to run
+     * @param period milliseconds between two runs
+     */
+    void schedule(Runnable task, long period) {
+        writer.scheduleWithFixedDelay(() -> {
+            try {
+                task.run();
+            } catch (RuntimeException ex) {
+                logger.log(Level.SEVERE, Errors.sqlConnectionExecute(), ex);
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Commits all pending writes and waits for the commit to complete. Used
+     * before reads so that they observe every write made before them.
+     */
+    void flushAndWait() {
+        if (Thread.currentThread() == writerThread || writer.isShutdown()) {
+            flush();
+            return;
+        }
+        try {
+            writer.submit(this::flush).get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException ex) {
+            logger.log(Level.SEVERE, Errors.sqlConnectionExecute(), ex.getCause());
+        }
+    }
+
+    /**
+     * Runs a read on the writer thread right after committing every write made
+     * before this call, and before committing any write made after it. The read
+     * thus observes exactly the writes made before it, without blocking the
+     * caller, so that the caller can tell which of its later writes the result
+     * still lacks.
+     *
+     * @param read read to run
+     * @return future completed with the result of {@code read}
+     */
+    <T> CompletableFuture<T> read(Supplier<T> read) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        synchronized (this) {
+            pending.reads.add(() -> {
+                try {
+                    result.complete(read.get());
+                } catch (RuntimeException ex) {
+                    result.completeExceptionally(ex);
+                }
+            });
+            sealed.add(pending);
+            pending = new PendingWrites();
+        }
+        if (writer.isShutdown()) {
+            flush();
+        } else {
+            writer.execute(this::flush);
+        }
+        return result;
+    }
+
+    /**
+     * Stops the writer thread and commits whatever is still pending on the
+     * calling thread.
+     */
+    void shutdown() {
+        writer.shutdown();
+        try {
+            if (!writer.awaitTermination(10, TimeUnit.SECONDS)) {
+                writer.shutdownNow();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+
+    private void flush() {
+        synchronized (commitLock) {
+            List<PendingWrites> batches;
+            synchronized (this) {
+                batches = new ArrayList<>(sealed);
+                sealed.clear();
+                if (!pending.isEmpty()) {
+                    batches.add(pending);
+                    pending = new PendingWrites();
+                }
+            }
+            for (PendingWrites batch : batches) {
+                if (!batch.isEmpty()) {
+                    commit(batch);
+                }
+                batch.reads.forEach(Runnable::run);
+            }
+        }
+    }
+
+    /**
+     * Commits a batch, retrying with backoff if the transaction is rolled back.
+     * The futures of the batch are completed however the commit ends, and a
+     * batch that could not be committed is logged before being discarded.
+     *
+     * @param batch batch to commit
+     */
+    private void commit(PendingWrites batch) {
+        Map<PendingWrites.Change, Integer> results = null;
+        try {
+            for (int attempt = 0; results == null && attempt < MAX_ATTEMPTS; attempt++) {
+                if (attempt > 0) {
+                    Thread.sleep(RETRY_DELAY << (attempt - 1));
+                }
+                results = database.commit(batch);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException ex) {
+            logger.log(Level.SEVERE, Errors.sqlConnectionExecute(), ex);
+        } finally {
+            if (results == null) {
+                logger.log(Level.SEVERE, "Discarded database writes that could not be committed: " + batch.describe());
+            }
+            batch.complete(results);
+        }
+    }
+}
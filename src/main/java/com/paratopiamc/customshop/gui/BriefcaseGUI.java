@@ -18,14 +18,14 @@
 
 package com.paratopiamc.customshop.gui;
 
-import java.util.ArrayList;
 import java.util.List;
 import com.paratopiamc.customshop.player.PlayerState;
 import com.paratopiamc.customshop.plugin.CustomShop;
-import com.paratopiamc.customshop.plugin.CustomShopLogger;
-import com.paratopiamc.customshop.plugin.CustomShopLogger.Level;
+import com.paratopiamc.customshop.shop.briefcase.BriefcaseRecord;
+import com.paratopiamc.customshop.utils.InventoryPlanner;
 import com.paratopiamc.customshop.utils.LanguageUtils;
 import com.paratopiamc.customshop.utils.MessageUtils;
+import com.paratopiamc.customshop.utils.ShopTags;
 import com.paratopiamc.customshop.utils.UIUtils;
 import com.paratopiamc.customshop.utils.MessageUtils.Message;
 
@@ -34,7 +34,6 @@ import org.bukkit.Material;
 import org.bukkit.Sound;
 import org.bukkit.entity.ArmorStand;
 import org.bukkit.entity.Player;
-import org.bukkit.inventory.EntityEquipment;
 import org.bukkit.inventory.Inventory;
 import org.bukkit.inventory.ItemStack;
 import org.bukkit.inventory.meta.ItemMeta;
@@ -55,17 +54,10 @@ public class BriefcaseGUI extends ShopGUI {
      */
     private Inventory ownerView;
     /**
-     * Price of item.
+     * Record of the briefcase, holding the item, its price, its quantity and
+     * whether the shop is selling.
      */
-    private double price;
-    /**
-     * Whether the shop is selling.
-     */
-    private boolean selling;
-    /**
-     * Quantity of item in the shop.
-     */
-    private int quantity;
+    private final BriefcaseRecord record;
 
     /**
      * Constructor for briefcase's GUI, which can be called regardless whether the
@@ -73,23 +65,17 @@ public class BriefcaseGUI extends ShopGUI {
      *
      * @param armorStand verified to be a briefcase, cannot be {@code null}
      * @param player     viewer of the GUI
-     * @throws NullPointerException if {@code armorStand}'s chestplate item does not
-     *                              have a display name
+     * @throws NullPointerException if {@code armorStand} is not tagged as a shop
+     *                              and cannot be tagged
      */
     public BriefcaseGUI(ArmorStand armorStand, Player player) {
-        super(player, armorStand, armorStand.getEquipment().getChestplate().getItemMeta().getDisplayName());
-        EntityEquipment armorStandContent = armorStand.getEquipment();
-        ItemStack item = armorStandContent.getLeggings();
-        if (item != null && item.getType() != Material.AIR) {
+        super(player, armorStand, ShopTags.getOwnerID(armorStand).toString());
+        this.record = (BriefcaseRecord) CustomShop.getPlugin().getShopIndex().getRecord(armorStand);
+        ItemStack item = record.getItem();
+        if (item != null) {
             normalView = Bukkit.createInventory(null, 9 * 4, LanguageUtils.getString("newt-briefcase-customer"));
             ownerView = Bukkit.createInventory(null, 9 * 4, LanguageUtils.getString("newt-briefcase-owner"));
 
-            ItemStack placeHolder = armorStandContent.getChestplate();
-            List<String> info = placeHolder.getItemMeta().getLore();
-            this.price = Double.parseDouble(info.get(0));
-            this.quantity = Integer.parseInt(info.get(1));
-            this.selling = Boolean.parseBoolean(info.get(2));
-
             // Setting up UI elements on the last row.
             int[] blackSlots = new int[] { 0, 1, 2, 3, 5, 6, 7, 8 };
             for (int i : blackSlots) {
@@ -99,7 +85,7 @@ public class BriefcaseGUI extends ShopGUI {
             UIUtils.createItem(normalView, 3, 4, Material.BARRIER, 1, "§c" + LanguageUtils.getString("icons.close"));
 
             UIUtils.createItem(ownerView, 3, 2, Material.OAK_SIGN, 1,
-                    "§6" + (this.selling ? LanguageUtils.getString("price-tag.selling")
+                    "§6" + (record.isSelling() ? LanguageUtils.getString("price-tag.selling")
                             : LanguageUtils.getString("price-tag.buying")),
                     "§2" + LanguageUtils.getString("icons.selling-status.lore"));
             UIUtils.createItem(ownerView, 3, 3, Material.NAME_TAG, 1,
@@ -113,9 +99,48 @@ public class BriefcaseGUI extends ShopGUI {
                     "§2" + LanguageUtils.getString("icons.retrieve-items.lore"));
             UIUtils.createItem(ownerView, 3, 6, Material.BARRIER, 1, "§c" + LanguageUtils.getString("icons.close"));
 
-            normalView.setItem(13, UIUtils.setPriceTag(item, this.price, this.selling, this.isAdmin, this.quantity));
-            ownerView.setItem(13, UIUtils.setPriceTag(item, this.price, this.selling, this.isAdmin, this.quantity));
+            refreshView();
+            ownerView.setItem(13, UIUtils.setPriceTag(item, record.getPrice(), record.isSelling(), this.isAdmin,
+                    record.getQuantity()));
+        }
+    }
+
+    /**
+     * Shows the briefcase's current stock to a customer.
+     */
+    @Override
+    protected void refreshView() {
+        ItemStack item = record.getItem();
+        if (normalView == null || item == null) {
+            return;
         }
+        normalView.setItem(13, UIUtils.loreItem(
+                UIUtils.setPriceTag(item, record.getPrice(), record.isSelling(), this.isAdmin, record.getQuantity()),
+                "§7" + LanguageUtils.getString(record.isSelling() ? "price-tag.quick-buy" : "price-tag.quick-sell")));
+    }
+
+    /**
+     * Returns the amount of the briefcase's item that the viewer can purchase at
+     * once, i.e. that is in stock and fits in the viewer's inventory.
+     *
+     * @param item item to be purchased
+     * @return amount of item that can be purchased
+     */
+    public int getPurchasableAmount(ItemStack item) {
+        int capacity = new InventoryPlanner(viewer.getInventory(), item).getCapacity();
+        return this.isAdmin ? capacity : Math.min(capacity, record.getQuantity());
+    }
+
+    /**
+     * Returns the amount of the briefcase's item that the viewer can sell at once,
+     * i.e. that the viewer has and the briefcase has room for.
+     *
+     * @param item item to be sold
+     * @return amount of item that can be sold
+     */
+    public int getSellableAmount(ItemStack item) {
+        int count = UIUtils.countItems(viewer.getInventory(), item);
+        return this.isAdmin ? count : Math.min(count, Integer.MAX_VALUE - record.getQuantity());
     }
 
     /**
@@ -125,7 +150,8 @@ public class BriefcaseGUI extends ShopGUI {
      * @return item that shop is selling/buying
      */
     public ItemStack getItem() {
-        return this.armorStand.getEquipment().getLeggings().clone();
+        ItemStack item = record.getItem();
+        return item == null ? null : item.clone();
     }
 
     /**
@@ -134,8 +160,7 @@ public class BriefcaseGUI extends ShopGUI {
      * @return {@code true} if the shop has an item set
      */
     public boolean hasItem() {
-        ItemStack item = this.armorStand.getEquipment().getLeggings();
-        return item != null && item.getType() != Material.AIR;
+        return record.getItem() != null;
     }
 
     /**
@@ -146,11 +171,8 @@ public class BriefcaseGUI extends ShopGUI {
         if (item == null || item.getType() == Material.AIR) {
             return LanguageUtils.getString("price-convo-failed-no-item");
         } else {
-            EntityEquipment armorStandContent = this.armorStand.getEquipment();
             item.setAmount(1);
-            armorStandContent.setLeggings(item);
-
-            this.updatePlaceHolderLore(1, price);
+            record.setItem(item, price);
             return String.format(LanguageUtils.getString("price-convo-success"),
                     MessageUtils.getReadablePriceTag(price));
         }
@@ -178,15 +200,19 @@ public class BriefcaseGUI extends ShopGUI {
             return;
         }
 
-        int remainingSpace = Integer.MAX_VALUE - this.quantity;
-        double totalCost = amount * price;
-        if (remainingSpace < amount && !this.isAdmin) {
+        int remainingSpace = Integer.MAX_VALUE - record.getQuantity();
+        double totalCost = amount * record.getPrice();
+        if (!this.isAdmin && (remainingSpace < amount || !adjustQuantity(amount))) {
             viewer.sendMessage(String.format(LanguageUtils.getString("sell-convo-failed-limit"), remainingSpace));
-        } else if (super.ownerBuy(amount, totalCost, item)) { // Valid transaction
-            if (!this.isAdmin) {
-                this.updatePlaceHolderLore(2, this.quantity + amount);
-            }
-            pInventory.removeItem(clone);
+        } else {
+            // Items are taken before the customer is paid, and given back if the payment fails.
+            pInventory.removeItem(clone.clone());
+            super.ownerBuy(amount, totalCost, clone, () -> {}, () -> {
+                if (!this.isAdmin) {
+                    adjustQuantity(-amount);
+                }
+                giveItems(clone, amount);
+            });
         }
     }
 
@@ -196,7 +222,7 @@ public class BriefcaseGUI extends ShopGUI {
      * @return {@code true} if the shop is selling
      */
     public boolean isSelling() {
-        return this.selling;
+        return record.isSelling();
     }
 
     /**
@@ -205,18 +231,17 @@ public class BriefcaseGUI extends ShopGUI {
      * @param selling whether the shop is selling
      */
     public void setSelling(boolean selling) {
-        this.selling = selling;
-        this.updatePlaceHolderLore(3, selling);
+        record.setSelling(selling);
 
         UIUtils.createItem(ownerView, 3, 2, Material.OAK_SIGN, 1,
-                "§6" + (this.selling ? LanguageUtils.getString("price-tag.selling")
+                "§6" + (record.isSelling() ? LanguageUtils.getString("price-tag.selling")
                         : LanguageUtils.getString("price-tag.buying")),
                 "§2" + LanguageUtils.getString("icons.selling-status.lore"));
 
         ItemStack item = ownerView.getItem(13);
         ItemMeta itemMeta = item.getItemMeta();
         List<String> itemLore = itemMeta.getLore();
-        itemLore.set(itemLore.size() - 2, "§5" + (this.selling ? LanguageUtils.getString("price-tag.selling")
+        itemLore.set(itemLore.size() - 2, "§5" + (selling ? LanguageUtils.getString("price-tag.selling")
                 : LanguageUtils.getString("price-tag.buying")));
         itemMeta.setLore(itemLore);
         item.setItemMeta(itemMeta);
@@ -233,37 +258,22 @@ public class BriefcaseGUI extends ShopGUI {
             return;
         }
         ItemStack item = this.getItem();
-        if (this.quantity < amount) {
+        if (record.getQuantity() < amount) {
             Message message = MessageUtils.getMessage(LanguageUtils.getString("customer-buy-fail-item"), ownerID,
                     viewer, 0, item, amount);
             CustomShop.getPlugin().support().sendMessage(viewer, message);
             return;
         }
-        Inventory pInventory = viewer.getInventory();
+        InventoryPlanner planner = new InventoryPlanner(viewer.getInventory(), item);
 
-        if (!UIUtils.hasSpace(pInventory, item, amount)) {
+        if (!planner.fits(amount)) {
             Message message = MessageUtils.getMessage(LanguageUtils.getString("customer-buy-fail-space"), ownerID,
                     viewer, 0, item, amount);
             CustomShop.getPlugin().support().sendMessage(viewer, message);
         } else { // Valid operation
-            List<ItemStack> stacks = new ArrayList<>();
-            int stackNumber = 0;
-            int currentAmount = amount;
-            while (currentAmount > item.getMaxStackSize()) {
-                ItemStack clone = item.clone();
-                clone.setAmount(item.getMaxStackSize());
-                stacks.add(clone);
-                currentAmount -= item.getMaxStackSize();
-                stackNumber++;
-            }
-            if (currentAmount != 0) {
-                item.setAmount(currentAmount);
-                stacks.add(item);
-                stackNumber++;
-            }
-            if (this.updatePlaceHolderLore(2, this.quantity - amount)
-                    && pInventory.addItem(stacks.toArray(new ItemStack[stackNumber])).isEmpty())
-                viewer.sendMessage(String.format(LanguageUtils.getString("retrieve-convo-success"), amount));
+            record.setQuantity(record.getQuantity() - amount);
+            planner.add(amount);
+            viewer.sendMessage(String.format(LanguageUtils.getString("retrieve-convo-success"), amount));
         }
     }
 
@@ -288,96 +298,64 @@ public class BriefcaseGUI extends ShopGUI {
             return;
         }
 
-        int remainingSpace = Integer.MAX_VALUE - this.quantity;
+        int remainingSpace = Integer.MAX_VALUE - record.getQuantity();
         if (remainingSpace < amount) {
             viewer.sendMessage(String.format(LanguageUtils.getString("add-convo-failed-limit"), remainingSpace));
         } else { // Valid operation
-            if (this.updatePlaceHolderLore(2, this.quantity + amount) && pInventory.removeItem(item).isEmpty())
+            record.setQuantity(record.getQuantity() + amount);
+            if (pInventory.removeItem(item).isEmpty())
                 viewer.sendMessage(String.format(LanguageUtils.getString("add-convo-success"), amount));
         }
     }
 
-    /**
-     * Updates placeholder's lore with the following properties at index:
-     * <ol>
-     * <li>price of the item
-     * <li>current stock of the item
-     * <li>boolean indicating whether shop is selling
-     * </ol>
-     * Sends console messages if update fails.
-     * 
-     * @param index    the index to update, refer above
-     * @param property the updated property
-     * @return {@code true} if updated succesfully
-     */
-    private boolean updatePlaceHolderLore(int index, Object property) {
-        EntityEquipment armorStandContent = this.armorStand.getEquipment();
-        ItemStack placeHolder = armorStandContent.getChestplate();
-        if (placeHolder == null || placeHolder.getType() == Material.AIR) {
-            CustomShopLogger.sendMessage("Briefcase without placeHolder detected at " + this.armorStand.getLocation()
-                    + ", unable to update shop info. Report this error!", Level.FAIL);
-            return false;
-        }
-        ItemMeta meta = placeHolder.getItemMeta();
-        if (!meta.hasLore()) {
-            CustomShopLogger.sendMessage("Briefcase's placeHolder without lore detected at "
-                    + this.armorStand.getLocation() + ", unable to update shop info. Report this error!", Level.FAIL);
-            return false;
-        }
-        List<String> lore = meta.getLore();
-        if (lore.size() < 3) {
-            CustomShopLogger.sendMessage("Briefcase's placeHolder with incomplete lore size detected at "
-                    + this.armorStand.getLocation() + ", unable to update shop info. Report this error!", Level.FAIL);
-            return false;
-        } else {
-            lore.set(index - 1, property.toString());
-            meta.setLore(lore);
-            placeHolder.setItemMeta(meta);
-            armorStandContent.setChestplate(placeHolder);
-            return true;
-        }
-    }
-
     @Override
     public void purchaseItem(ItemStack item, int amount) {
         if (item == null) {
             viewer.sendMessage("§cItem is null...");
             return;
         }
-        if (this.quantity < amount && !this.isAdmin) {
+        if (record.getQuantity() < amount && !this.isAdmin) {
             Message message = MessageUtils.getMessage(LanguageUtils.getString("customer-buy-fail-item"), ownerID,
                     viewer, 0, item, amount);
             CustomShop.getPlugin().support().sendMessage(viewer, message);
             return;
         }
-        Inventory pInventory = viewer.getInventory();
-        double totalCost = amount * price;
+        double totalCost = amount * record.getPrice();
 
-        if (!UIUtils.hasSpace(pInventory, item, amount)) {
+        if (!new InventoryPlanner(viewer.getInventory(), item).fits(amount)) {
             Message message = MessageUtils.getMessage(LanguageUtils.getString("customer-buy-fail-space"), ownerID,
                     viewer, totalCost, item, amount);
             CustomShop.getPlugin().support().sendMessage(viewer, message);
-        } else if (super.ownerSell(amount, totalCost, item)) { // Valid transaction
-            List<ItemStack> stacks = new ArrayList<>();
-            int stackNumber = 0;
-            int currentAmount = amount;
-            while (currentAmount > item.getMaxStackSize()) {
-                ItemStack clone = item.clone();
-                clone.setAmount(item.getMaxStackSize());
-                stacks.add(clone);
-                currentAmount -= item.getMaxStackSize();
-                stackNumber++;
-            }
-            if (currentAmount != 0) {
-                item.setAmount(currentAmount);
-                stacks.add(item);
-                stackNumber++;
-            }
-            pInventory.addItem(stacks.toArray(new ItemStack[stackNumber]));
-            if (!this.isAdmin) {
-                this.updatePlaceHolderLore(2, this.quantity - amount);
-            }
+        } else if (!this.isAdmin && !adjustQuantity(-amount)) {
+            Message message = MessageUtils.getMessage(LanguageUtils.getString("customer-buy-fail-item"), ownerID,
+                    viewer, 0, item, amount);
+            CustomShop.getPlugin().support().sendMessage(viewer, message);
+        } else {
+            // The caller's item may change before the payment completes.
+            ItemStack purchased = item.clone();
+            super.ownerSell(amount, totalCost, purchased, () -> giveItems(purchased, amount), () -> {
+                if (!this.isAdmin) {
+                    adjustQuantity(amount);
+                }
+            });
+        }
+    }
+
+    /**
+     * Changes the stock of the briefcase on behalf of a customer, before the
+     * customer pays or is paid, so that concurrent customers cannot trade the same
+     * stock.
+     *
+     * @param delta change in quantity
+     * @return {@code false} if the quantity would fall below 0 or overflow
+     */
+    private boolean adjustQuantity(int delta) {
+        long quantity = (long) record.getQuantity() + delta;
+        if (quantity < 0 || quantity > Integer.MAX_VALUE) {
+            return false;
         }
+        record.setQuantity((int) quantity);
+        return true;
     }
 
     @Override
@@ -385,7 +363,7 @@ public class BriefcaseGUI extends ShopGUI {
         if (normalView == null) {
             viewer.sendMessage(LanguageUtils.getString("briefcase-not-initialized"));
             Bukkit.getScheduler().runTask(CustomShop.getPlugin(),
-                    () -> PlayerState.getPlayerState(viewer).clearShopInteractions());
+                    () -> PlayerState.clearShopInteractions(viewer));
         } else {
             viewer.playSound(armorStand.getLocation(), Sound.BLOCK_ENDER_CHEST_OPEN, 0.5F, 1.0F);
             Bukkit.getScheduler().runTaskLater(CustomShop.getPlugin(), () -> this.viewer.openInventory(normalView), 2);
@@ -399,7 +377,7 @@ public class BriefcaseGUI extends ShopGUI {
         if (ownerView == null) {
             viewer.sendMessage(LanguageUtils.getString("briefcase-not-initialized"));
             Bukkit.getScheduler().runTask(CustomShop.getPlugin(),
-                    () -> PlayerState.getPlayerState(viewer).clearShopInteractions());
+                    () -> PlayerState.clearShopInteractions(viewer));
         } else {
             viewer.playSound(armorStand.getLocation(), Sound.BLOCK_ENDER_CHEST_OPEN, 0.5F, 1.0F);
             this.viewer.openInventory(ownerView);
@@ -410,6 +388,6 @@ public class BriefcaseGUI extends ShopGUI {
 
     @Override
     public void saveInventories() {
-        // Nothing to do for briefcases.
+        // Changes are saved to the briefcase's record as they are made.
     }
 }
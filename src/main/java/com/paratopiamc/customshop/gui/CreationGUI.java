@@ -53,14 +53,13 @@ public class CreationGUI {
 
     /**
      * Set up a GUI for the player. Called when static method
-     * {@link #openFirstPage(Player)} is called.
+     * {@link #openFirstPage(Player)} is called. {@code unlockedShops} is
+     * {@code null} if every shop is available to the player.
      */
-    public CreationGUI(Player player, boolean isAdmin) {
+    public CreationGUI(Player player, boolean isAdmin, List<Integer> unlockedShops) {
         this.isAdmin = isAdmin;
         this.currentPage = 0;
-        if (!isAdmin && !CustomShop.getPlugin().getConfig().getBoolean("unlock-all")) {
-            unlockedShops = CustomShop.getPlugin().getDatabase().getUnlockedShops(player);
-        }
+        this.unlockedShops = unlockedShops;
         this.setUpGUI(player);
         this.player = player;
     }
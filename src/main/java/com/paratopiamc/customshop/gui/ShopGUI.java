@@ -19,19 +19,22 @@
 package com.paratopiamc.customshop.gui;
 
 import java.util.UUID;
-import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
+import com.paratopiamc.customshop.player.PlayerState;
 import com.paratopiamc.customshop.plugin.CustomShop;
+import com.paratopiamc.customshop.shop.RegisteredShop;
+import com.paratopiamc.customshop.shop.TradePipeline;
+import com.paratopiamc.customshop.utils.InventoryPlanner;
 import com.paratopiamc.customshop.utils.LanguageUtils;
 import com.paratopiamc.customshop.utils.MessageUtils;
 import com.paratopiamc.customshop.utils.MessageUtils.Message;
+import com.paratopiamc.customshop.utils.ShopTags;
 import org.bukkit.Bukkit;
-import org.bukkit.Material;
 import org.bukkit.OfflinePlayer;
 import org.bukkit.entity.ArmorStand;
 import org.bukkit.entity.Player;
 import org.bukkit.inventory.Inventory;
 import org.bukkit.inventory.ItemStack;
-import net.milkbowl.vault.economy.Economy;
 
 /**
  * Encapsulates a shop GUI, which contains inventory views for interacting with
@@ -69,9 +72,7 @@ public abstract class ShopGUI {
         this.armorStand = armorStand;
         this.viewer = player;
         this.ownerID = ownerID;
-
-        ItemStack adminItem = armorStand.getEquipment().getBoots();
-        this.isAdmin = adminItem != null && adminItem.getType() != Material.AIR;
+        this.isAdmin = ShopTags.isAdmin(armorStand);
     }
 
     /**
@@ -93,56 +94,47 @@ public abstract class ShopGUI {
     }
 
     /**
-     * Money transaction when owner sells item (recieves money) to customer. Sends
-     * feedback message to viewer regarding the outcome of the transaction. If
-     * transaction is made successfully, owner will also receive relevant messages
-     * if he is online. Otherwise, it will be saved in the database and pushed to
-     * the owner on join.
+     * Money transaction when owner sells item (recieves money) to customer. The
+     * payment is made asynchronously by the {@link TradePipeline}; the stock of the
+     * trade must be reserved before calling this method. Once the outcome is
+     * known, sends feedback message to viewer and runs either {@code onSuccess},
+     * to hand over the items, or {@code onFailure}, to put the reserved stock back.
+     * If transaction is made successfully, owner will also receive relevant
+     * messages if he is online. Otherwise, it will be saved in the database and
+     * pushed to the owner on join.
      * 
      * @param amount    amount of items sold, disregards the amount tagged to
      *                  {@code item}
      * @param totalCost total money involved in the transaction
      * @param item      item sold
-     * @return {@code true} if transaction is successful
-     */
-    protected boolean ownerSell(int amount, double totalCost, ItemStack item) {
-        Economy economy = CustomShop.getPlugin().getEconomy();
-        double bal = economy.getBalance(viewer);
-
-        if (bal < totalCost) {
-            Message message = MessageUtils.getMessage(LanguageUtils.getString("customer-buy-fail-money"), ownerID,
-                    viewer, totalCost, item, amount);
-            CustomShop.getPlugin().support().sendMessage(viewer, message);
-            return false;
-        } else if (this.isAdmin) { // Valid transaction
-            economy.withdrawPlayer(viewer, totalCost);
-            Message message = MessageUtils.getMessage(LanguageUtils.getString("customer-buy-success-customer"), ownerID,
-                    viewer, totalCost, item, amount);
-            CustomShop.getPlugin().support().sendMessage(viewer, message);
-            return true;
-        } else {
-            OfflinePlayer owner = Bukkit.getOfflinePlayer(UUID.fromString(this.ownerID));
-            economy.withdrawPlayer(viewer, totalCost);
-            economy.depositPlayer(owner, totalCost);
-            Message message = MessageUtils.getMessage(LanguageUtils.getString("customer-buy-success-customer"), ownerID,
-                    viewer, totalCost, item, amount);
-            CustomShop.getPlugin().support().sendMessage(viewer, message);
-
-            if (owner.isOnline()) {
-                Message ownerMessage = MessageUtils.getMessage(LanguageUtils.getString("customer-buy-success-owner"),
+     * @param onSuccess run on the main thread if the customer has paid
+     * @param onFailure run on the main thread if the transaction failed
+     */
+    protected void ownerSell(int amount, double totalCost, ItemStack item, Runnable onSuccess, Runnable onFailure) {
+        UUID owner = UUID.fromString(this.ownerID);
+        submit(viewer.getUniqueId(), this.isAdmin ? null : owner, totalCost, true, (trade, result) -> {
+            if (result == TradePipeline.Result.SUCCESS) {
+                onSuccess.run();
+                recordTrade(viewer.getUniqueId(), owner, item, amount, totalCost);
+                Message message = MessageUtils.getMessage(LanguageUtils.getString("customer-buy-success-customer"),
                         ownerID, viewer, totalCost, item, amount);
-                CustomShop.getPlugin().support().sendMessage(owner.getPlayer(), ownerMessage);
+                CustomShop.getPlugin().support().sendMessage(viewer, message);
+                if (!this.isAdmin) {
+                    notifyOwner("customer-buy-success-owner", true, item, amount, totalCost);
+                }
             } else {
-                CompletableFuture.runAsync(() -> CustomShop.getPlugin().getDatabase().storeMessage(ownerID, viewer,
-                        true, item, amount, totalCost));
+                onFailure.run();
+                sendFailure(result, "customer-buy-fail-money", item, amount, totalCost);
             }
-            return true;
-        }
+        });
     }
 
     /**
-     * Money transaction when owner buys item (pays money) from customer. Sends
-     * feedback message to viewer regarding the outcome of the transaction. If
+     * Money transaction when owner buys item (pays money) from customer. The
+     * payment is made asynchronously by the {@link TradePipeline}; the stock of the
+     * trade must be reserved before calling this method. Once the outcome is
+     * known, sends feedback message to viewer and runs either {@code onSuccess},
+     * to take the items, or {@code onFailure}, to put the reserved stock back. If
      * transaction is made successfully, owner will also receive relevant messages
      * if he is online. Otherwise, it will be saved in the database and pushed to
      * the owner on join.
@@ -151,43 +143,128 @@ public abstract class ShopGUI {
      *                  {@code item}
      * @param totalCost total money involved in the transaction
      * @param item      item bought
-     * @return {@code true} if transaction is successful
+     * @param onSuccess run on the main thread if the customer has been paid
+     * @param onFailure run on the main thread if the transaction failed
      */
-    protected boolean ownerBuy(int amount, double totalCost, ItemStack item) {
-        OfflinePlayer owner = Bukkit.getOfflinePlayer(UUID.fromString(this.ownerID));
-        Economy economy = CustomShop.getPlugin().getEconomy();
-        double bal = economy.getBalance(owner);
-
-        if (bal < totalCost) {
-            Message message = MessageUtils.getMessage(LanguageUtils.getString("customer-sell-fail-money"), ownerID,
-                    viewer, totalCost, item, amount);
-            CustomShop.getPlugin().support().sendMessage(viewer, message);
-            return false;
-        } else if (this.isAdmin) { // Valid transaction
-            economy.depositPlayer(viewer, totalCost);
-            Message message = MessageUtils.getMessage(LanguageUtils.getString("customer-sell-success-customer"),
-                    ownerID, viewer, totalCost, item, amount);
-            CustomShop.getPlugin().support().sendMessage(viewer, message);
-            return true;
-        } else {
-            economy.withdrawPlayer(owner, totalCost);
-            economy.depositPlayer(viewer, totalCost);
-            Message message = MessageUtils.getMessage(LanguageUtils.getString("customer-sell-success-customer"),
-                    ownerID, viewer, totalCost, item, amount);
-            CustomShop.getPlugin().support().sendMessage(viewer, message);
-
-            if (owner.isOnline()) {
-                Message ownerMessage = MessageUtils.getMessage(LanguageUtils.getString("customer-sell-success-owner"),
+    protected void ownerBuy(int amount, double totalCost, ItemStack item, Runnable onSuccess, Runnable onFailure) {
+        UUID owner = UUID.fromString(this.ownerID);
+        // The items were taken before the payment, so the trade stands even if the
+        // customer left in the meantime.
+        submit(this.isAdmin ? null : owner, viewer.getUniqueId(), totalCost, false, (trade, result) -> {
+            if (result == TradePipeline.Result.SUCCESS) {
+                onSuccess.run();
+                recordTrade(owner, viewer.getUniqueId(), item, amount, totalCost);
+                Message message = MessageUtils.getMessage(LanguageUtils.getString("customer-sell-success-customer"),
                         ownerID, viewer, totalCost, item, amount);
-                CustomShop.getPlugin().support().sendMessage(owner.getPlayer(), ownerMessage);
+                CustomShop.getPlugin().support().sendMessage(viewer, message);
+                if (!this.isAdmin) {
+                    notifyOwner("customer-sell-success-owner", false, item, amount, totalCost);
+                }
             } else {
-                CompletableFuture.runAsync(() -> CustomShop.getPlugin().getDatabase().storeMessage(ownerID, viewer,
-                        false, item, amount, totalCost));
+                onFailure.run();
+                sendFailure(result, "customer-sell-fail-money", item, amount, totalCost);
+            }
+        });
+    }
+
+    /**
+     * Submits the payment of a trade at this shop. If {@code deliversItems}, a
+     * payment that succeeds after the viewer has left is refunded and handled as
+     * a failure, as the items can no longer be handed to the viewer.
+     */
+    private void submit(UUID payer, UUID payee, double totalCost, boolean deliversItems,
+            BiConsumer<TradePipeline.Trade, TradePipeline.Result> callback) {
+        TradePipeline pipeline = CustomShop.getPlugin().getTradePipeline();
+        RegisteredShop shop = CustomShop.getPlugin().getShopRegistry().get(armorStand.getLocation());
+        pipeline.submit(shop == null ? null : shop.getId(), payer, payee, totalCost, (trade, result) -> {
+            if (result == TradePipeline.Result.SUCCESS && deliversItems && !viewer.isOnline()) {
+                pipeline.compensate(trade);
+                callback.accept(trade, TradePipeline.Result.FAILED);
+            } else {
+                callback.accept(trade, result);
+                if (result == TradePipeline.Result.SUCCESS) {
+                    pipeline.complete(trade);
+                }
+            }
+            refreshViews();
+        });
+        // The stock was reserved before the payment.
+        refreshViews();
+    }
+
+    /**
+     * Updates the view of every player viewing this shop, as the stock that they
+     * see is shared.
+     */
+    private void refreshViews() {
+        PlayerState.getShopGUIs(armorStand).forEach(ShopGUI::refreshView);
+    }
+
+    /**
+     * Updates the customer's view after the stock of the shop changed, as
+     * customers may keep the GUI open between quick trades. Does nothing by
+     * default.
+     */
+    protected void refreshView() {
+    }
+
+    private void notifyOwner(String key, boolean selling, ItemStack item, int amount, double totalCost) {
+        OfflinePlayer owner = Bukkit.getOfflinePlayer(UUID.fromString(this.ownerID));
+        if (owner.isOnline()) {
+            Message ownerMessage = MessageUtils.getMessage(LanguageUtils.getString(key), ownerID, viewer, totalCost,
+                    item, amount);
+            CustomShop.getPlugin().support().sendMessage(owner.getPlayer(), ownerMessage);
+        } else {
+            CustomShop.getPlugin().getDatabase().storeMessage(ownerID, viewer, selling, item, amount, totalCost);
+        }
+    }
+
+    private void sendFailure(TradePipeline.Result result, String fundsKey, ItemStack item, int amount,
+            double totalCost) {
+        if (!viewer.isOnline()) {
+            return;
+        }
+        String key = result == TradePipeline.Result.INSUFFICIENT_FUNDS ? fundsKey : "trade-failed";
+        Message message = MessageUtils.getMessage(LanguageUtils.getString(key), ownerID, viewer, totalCost, item,
+                amount);
+        CustomShop.getPlugin().support().sendMessage(viewer, message);
+    }
+
+    /**
+     * Hands items to the viewer. Items that no longer fit, as the inventory may
+     * have changed while the payment was made, are dropped at the viewer's feet.
+     *
+     * @param item   item to hand over
+     * @param amount amount of item, disregards the amount tagged to {@code item}
+     */
+    protected void giveItems(ItemStack item, int amount) {
+        int remaining = new InventoryPlanner(viewer.getInventory(), item).add(amount);
+        if (remaining > 0) {
+            ItemStack drop = item.clone();
+            while (remaining > 0) {
+                drop.setAmount(Math.min(remaining, item.getMaxStackSize()));
+                viewer.getWorld().dropItem(viewer.getLocation(), drop);
+                remaining -= drop.getAmount();
             }
-            return true;
         }
     }
 
+    /**
+     * Appends a completed trade at this shop to the transactions ledger.
+     *
+     * @param buyerID   UUID of the player receiving the items
+     * @param sellerID  UUID of the player receiving the money
+     * @param item      item traded
+     * @param amount    amount of items traded
+     * @param totalCost total money involved in the trade
+     */
+    private void recordTrade(UUID buyerID, UUID sellerID, ItemStack item, int amount, double totalCost) {
+        CustomShop plugin = CustomShop.getPlugin();
+        RegisteredShop shop = plugin.getShopRegistry().get(armorStand.getLocation());
+        plugin.getDatabase().recordTrade(shop == null ? null : shop.getId(), buyerID, sellerID, item, amount,
+                totalCost);
+    }
+
     /**
      * Get the inventory that the player is interacting with.
      * 
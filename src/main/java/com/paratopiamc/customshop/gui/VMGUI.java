@@ -19,13 +19,19 @@
 package com.paratopiamc.customshop.gui;
 
 import org.bukkit.entity.ArmorStand;
-import org.bukkit.block.ShulkerBox;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import com.paratopiamc.customshop.plugin.CustomShop;
+import com.paratopiamc.customshop.plugin.CustomShopLogger;
+import com.paratopiamc.customshop.plugin.CustomShopLogger.Level;
+import com.paratopiamc.customshop.shop.vm.VMRecord;
+import com.paratopiamc.customshop.utils.InventoryPlanner;
 import com.paratopiamc.customshop.utils.LanguageUtils;
 import com.paratopiamc.customshop.utils.MessageUtils;
+import com.paratopiamc.customshop.utils.ShopTags;
 import com.paratopiamc.customshop.utils.UIUtils;
 import com.paratopiamc.customshop.utils.MessageUtils.Message;
 
@@ -35,7 +41,6 @@ import org.bukkit.Sound;
 import org.bukkit.entity.Player;
 import org.bukkit.inventory.Inventory;
 import org.bukkit.inventory.ItemStack;
-import org.bukkit.inventory.meta.BlockStateMeta;
 
 /** Custom GUI for vending machines. */
 public class VMGUI extends ShopGUI {
@@ -51,29 +56,46 @@ public class VMGUI extends ShopGUI {
      */
     private Inventory inventory;
     /**
-     * A copy of the block state from source container (Shulker Box), required to
-     * save items from {@link #inventory} to the true ShulkerBox. Any changes to
-     * this block state does not translate to that of the original source.
+     * Record of the vending machine, which the contents of {@link #inventory} and
+     * {@link #prices} are read from and saved to.
      */
-    private ShulkerBox sourceImage;
+    private final VMRecord record;
     /**
-     * A mapping of items to their prices. This mapping is retrieved from and
-     * eventually synced with the lure of the shulker box.
+     * Items of the vending machine when the GUI was opened, which
+     * {@link #prices} is indexed by.
      */
-    private HashMap<ItemStack, Double> prices;
+    private final ItemStack[] pricedItems;
+    /**
+     * Price of the item in each slot of {@link #pricedItems}.
+     */
+    private final double[] prices;
+    /**
+     * Whether {@link #inventory} may differ from the vending machine's record,
+     * which is the case once the owner view is opened. Purchases change the
+     * record directly, as customers share the vending machine.
+     */
+    private boolean contentsChanged;
+    /**
+     * Contents of the vending machine when the owner view was opened, which the
+     * owner's edits are told apart by.
+     */
+    private ItemStack[] ownerSnapshot;
+    /**
+     * Prices listed per item type since the GUI was opened, to be saved to the
+     * record. Keys are of amount set to 1.
+     */
+    private final Map<ItemStack, Double> listedPrices = new HashMap<>();
 
     /**
-     * Constructor method for vending machine. Retrieves the items from the source
-     * container that the armor stand holds.
+     * Constructor method for vending machine. Retrieves the items from the
+     * vending machine's record.
      *
      * @param armorStand armor stand containing source container
      * @param player     player viewing the GUI
      */
     public VMGUI(ArmorStand armorStand, Player player) {
-        super(player, armorStand, armorStand.getEquipment().getChestplate().getItemMeta().getDisplayName());
-        ItemStack block = armorStand.getEquipment().getChestplate();
-        BlockStateMeta blockMeta = (BlockStateMeta) block.getItemMeta();
-        this.sourceImage = (ShulkerBox) blockMeta.getBlockState();
+        super(player, armorStand, ShopTags.getOwnerID(armorStand).toString());
+        this.record = (VMRecord) CustomShop.getPlugin().getShopIndex().getRecord(armorStand);
 
         inventoryView = Bukkit.createInventory(null, 9 * 4, LanguageUtils.getString("vending-machine-customer"));
         inventory = Bukkit.createInventory(null, 9 * 3, LanguageUtils.getString("vending-machine-owner"));
@@ -85,15 +107,12 @@ public class VMGUI extends ShopGUI {
         }
         UIUtils.createItem(inventoryView, 3, 4, Material.BARRIER, 1, "§c" + LanguageUtils.getString("icons.close"));
 
-        prices = this.stringListToDoubleArray(blockMeta.getLore(), sourceImage.getInventory());
-
-        Inventory shulkerContent = sourceImage.getInventory();
-        for (int i = 0; i < shulkerContent.getSize(); i++) {
-            ItemStack item = shulkerContent.getItem(i);
+        pricedItems = record.getContents();
+        prices = record.getPrices();
+        for (int i = 0; i < pricedItems.length; i++) {
+            ItemStack item = pricedItems[i];
             if (item != null) {
-                ItemStack key = item.clone();
-                key.setAmount(1);
-                inventoryView.setItem(i, UIUtils.setPriceTag(item, prices.get(key)));
+                inventoryView.setItem(i, priceTag(item, prices[i]));
                 inventory.setItem(i, item);
             }
         }
@@ -110,78 +129,128 @@ public class VMGUI extends ShopGUI {
     }
 
     /**
-     * For converting lore list of shop's container to a {@link HashMap} of item
-     * prices. Each item is mapped to the first available price stated in lore. The
-     * lore is assumed to be of the same size as the inventory. As accordance to
-     * {@link ItemStack}'s {@link #equals(Object)} method, the keys stored in the
-     * resulting HashMap is of amount set to 1, and is equal to an item if and only
-     * if {@link ItemStack#isSimilar(ItemStack)} returns {@code true} and item
-     * amount is set to 1.
+     * Returns the amount of an item that the viewer can purchase at once, i.e. that
+     * is in stock and fits in the viewer's inventory.
      *
-     * @param lore lore list obtained from shulker's meta, cannot be {@code null}
-     * @return mapping of items to their corresponding prices
-     * @throws NullPointerException  if any of the String is null
-     * @throws NumberFormatException if any of the String is not of double format
+     * @param item item to be purchased
+     * @return amount of item that can be purchased
      */
-    private HashMap<ItemStack, Double> stringListToDoubleArray(List<String> lore, Inventory inventory) {
-        HashMap<ItemStack, Double> result = new HashMap<>();
-        for (int i = 0; i < lore.size(); i++) {
-            ItemStack item = inventory.getItem(i);
-            if (item != null) {
-                item = item.clone();
-                item.setAmount(1);
-                if (!result.containsKey(item)) {
-                    result.put(item, Double.parseDouble(lore.get(i)));
-                }
-            }
+    public int getPurchasableAmount(ItemStack item) {
+        int capacity = new InventoryPlanner(viewer.getInventory(), item).getCapacity();
+        return this.isAdmin ? capacity : Math.min(capacity, record.count(item));
+    }
+
+    /**
+     * Shows the vending machine's current stock to a customer, unless the owner
+     * view was opened, whose changes are yet to be saved.
+     */
+    @Override
+    protected void refreshView() {
+        if (contentsChanged) {
+            return;
+        }
+        ItemStack[] contents = record.getContents();
+        for (int i = 0; i < contents.length; i++) {
+            ItemStack item = contents[i];
+            inventoryView.setItem(i, item == null ? null : priceTag(item, getPrice(item)));
+            inventory.setItem(i, item);
         }
-        return result;
+    }
+
+    private static ItemStack priceTag(ItemStack item, double price) {
+        return UIUtils.loreItem(UIUtils.setPriceTag(item, price),
+                "§7" + LanguageUtils.getString("price-tag.quick-buy"));
     }
 
     /**
-     * For converting mapping of prices to lore list. The index of lore corresponds
-     * to index of item in {@link #inventory}, similarly for size.
+     * Gets the price of an item, that of the first similar item in the vending
+     * machine.
      *
-     * @return List of string representation of the prices
+     * @param item item of interest
+     * @return {@code 0} if no similar item was in the vending machine
      */
-    public List<String> doubleToStringList() {
-        List<String> result = new ArrayList<>();
-        for (int i = 0; i < this.inventory.getSize(); i++) {
-            ItemStack item = this.inventory.getItem(i);
-            if (item != null) {
-                ItemStack key = item.clone();
-                key.setAmount(1);
-                Double price = this.prices.get(key);
-                price = price == null ? 0.0 : price;
-                result.add(price.toString());
-            } else {
-                result.add("0.0");
+    private double getPrice(ItemStack item) {
+        for (int i = 0; i < pricedItems.length; i++) {
+            if (item.isSimilar(pricedItems[i])) {
+                return prices[i];
             }
         }
-        return result;
+        return 0;
     }
 
     /**
-     * {@inheritDoc} This method attempts to replace the original shulker in the
-     * armor stand's chestplate slot with a duplicate of the same name and updated
-     * contents, as the original copy is not retrievable.
+     * {@inheritDoc} Only the slots and prices that changed while the GUI was
+     * open are saved to the vending machine's record, which is written back to
+     * the armor stand later. Nothing is saved for customers who only browsed.
      */
     @Override
     public void saveInventories() {
         // Does non-null armorStand imply non-null ShopGUI?
-        if (armorStand != null) {
-            for (int i = 0; i < 27; i++) {
-                sourceImage.getInventory().setItem(i, inventory.getItem(i));
+        if (armorStand == null) {
+            return;
+        }
+        if (contentsChanged) {
+            saveOwnerEdits();
+            contentsChanged = false;
+        }
+        // Applied after the items, so that newly added items are priced as well.
+        listedPrices.forEach(record::setPrice);
+        listedPrices.clear();
+    }
+
+    /**
+     * Saves the slots that the owner changed in the owner view, leaving the other
+     * slots as they are in the record. Payments that failed while the view was
+     * open put their items back into the record, so items that the record gained
+     * in a slot that the owner changed as well are put back into another slot, or
+     * dropped at the owner's feet if the vending machine is full.
+     */
+    private void saveOwnerEdits() {
+        ItemStack[] edited = inventory.getContents();
+        ItemStack[] current = record.getContents();
+        ItemStack[] merged = current.clone();
+        List<ItemStack> displaced = new ArrayList<>();
+        for (int i = 0; i < merged.length; i++) {
+            if (Objects.equals(edited[i], ownerSnapshot[i])) {
+                continue;
+            }
+            merged[i] = edited[i];
+            ItemStack gained = gained(ownerSnapshot[i], current[i]);
+            if (gained != null) {
+                displaced.add(gained);
+            }
+        }
+        record.setContents(merged);
+        for (ItemStack item : displaced) {
+            int left = record.returnItems(item, item.getAmount(), getPrice(item));
+            if (left > 0) {
+                item.setAmount(left);
+                viewer.getWorld().dropItem(viewer.getLocation(), item);
             }
-            ItemStack container = armorStand.getEquipment().getChestplate();
-            BlockStateMeta shulkerMeta = (BlockStateMeta) container.getItemMeta();
-            shulkerMeta.setLore(this.doubleToStringList());
-            shulkerMeta.setBlockState(sourceImage);
-            container.setItemMeta(shulkerMeta);
-            armorStand.getEquipment().setChestplate(container);
         }
     }
 
+    /**
+     * Returns the items that a slot gained, if any.
+     *
+     * @param before content of the slot before
+     * @param after  content of the slot now
+     * @return {@code null} if the slot did not gain any items
+     */
+    private static ItemStack gained(ItemStack before, ItemStack after) {
+        if (after == null || Objects.equals(before, after)) {
+            return null;
+        }
+        ItemStack gained = after.clone();
+        if (after.isSimilar(before)) {
+            if (after.getAmount() <= before.getAmount()) {
+                return null;
+            }
+            gained.setAmount(after.getAmount() - before.getAmount());
+        }
+        return gained;
+    }
+
     /**
      * Player purchases item from shop. This event is cancelled if:
      * <ul>
@@ -200,45 +269,33 @@ public class VMGUI extends ShopGUI {
         if (item == null) {
             viewer.sendMessage("§cItem is null...");
             return;
-        } else if (!inventory.containsAtLeast(item, amount) && !this.isAdmin) {
+        } else if (!this.isAdmin && record.count(item) < amount) {
             Message message = MessageUtils.getMessage(LanguageUtils.getString("customer-buy-fail-item"), ownerID,
                     viewer, 0, item, amount);
             CustomShop.getPlugin().support().sendMessage(viewer, message);
             return;
         }
 
-        ItemStack key = item.clone();
-        key.setAmount(1);
-        double totalCost = amount * prices.get(key);
+        double price = getPrice(item);
+        double totalCost = amount * price;
 
-        Inventory pInventory = viewer.getInventory();
-        if (!UIUtils.hasSpace(pInventory, item, amount)) {
+        if (!new InventoryPlanner(viewer.getInventory(), item).fits(amount)) {
             Message message = MessageUtils.getMessage(LanguageUtils.getString("customer-buy-fail-space"), ownerID,
                     viewer, totalCost, item, amount);
             CustomShop.getPlugin().support().sendMessage(viewer, message);
-        } else if (super.ownerSell(amount, totalCost, item)) { // Valid transaction
-            item.setAmount(amount);
-            // addItem mutates item, use temp to clone a copy
-            ItemStack temp = item.clone();
-            List<ItemStack> stacks = new ArrayList<>();
-            int stackNumber = 0;
-            int currentAmount = amount;
-            while (currentAmount > item.getMaxStackSize()) {
-                ItemStack clone = item.clone();
-                clone.setAmount(item.getMaxStackSize());
-                stacks.add(clone);
-                currentAmount -= item.getMaxStackSize();
-                stackNumber++;
-            }
-            if (currentAmount != 0) {
-                item.setAmount(currentAmount);
-                stacks.add(item);
-                stackNumber++;
-            }
-            pInventory.addItem(stacks.toArray(new ItemStack[stackNumber]));
-            if (!this.isAdmin) {
-                inventory.removeItem(temp);
-            }
+        } else if (!this.isAdmin && !record.takeItems(item, amount)) {
+            Message message = MessageUtils.getMessage(LanguageUtils.getString("customer-buy-fail-item"), ownerID,
+                    viewer, 0, item, amount);
+            CustomShop.getPlugin().support().sendMessage(viewer, message);
+        } else {
+            // The caller's item may change before the payment completes.
+            ItemStack purchased = item.clone();
+            super.ownerSell(amount, totalCost, purchased, () -> giveItems(purchased, amount), () -> {
+                if (!this.isAdmin && record.returnItems(purchased, amount, price) > 0) {
+                    CustomShopLogger.sendMessage("Unable to return items of failed purchase to vending machine at "
+                            + armorStand.getLocation() + "! Report this error!", Level.FAIL);
+                }
+            });
         }
     }
 
@@ -250,9 +307,14 @@ public class VMGUI extends ShopGUI {
         if (item == null || item.getType() == Material.AIR) {
             return LanguageUtils.getString("price-convo-failed-no-item");
         } else {
+            for (int i = 0; i < pricedItems.length; i++) {
+                if (item.isSimilar(pricedItems[i])) {
+                    prices[i] = price;
+                }
+            }
             ItemStack key = item.clone();
             key.setAmount(1);
-            prices.put(key, price);
+            listedPrices.put(key, price);
             return String.format(LanguageUtils.getString("price-convo-success"),
                     MessageUtils.getReadablePriceTag(price));
         }
@@ -269,8 +331,11 @@ public class VMGUI extends ShopGUI {
     @Override
     public void openOwnerUI() {
         viewer.playSound(armorStand.getLocation(), Sound.BLOCK_BARREL_OPEN, 0.5F, 1.0F);
+        this.ownerSnapshot = record.getContents();
+        inventory.setContents(ownerSnapshot);
         this.viewer.openInventory(inventory);
         this.interactingInventory = inventory;
+        this.contentsChanged = true;
         this.isOwnerView = true;
     }
 }
@@ -0,0 +1,102 @@
+/*
+ *  This file is part of CustomShop. Copyright (c) 2021 Paratopia.
+ *
+ *  CustomShop is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  CustomShop is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with CustomShop. If not, see <https://www.gnu.org/licenses/>.
+ *
+ */
+package com.paratopiamc.customshop.player;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import com.paratopiamc.customshop.utils.MessageUtils;
+
+/**
+ * Snapshot of a player's persisted shop data, held in memory for as long as the
+ * player is online. Changes made here are not persisted by themselves; see
+ * {@link PlayerDataCache} for the write-through operations.
+ */
+public class PlayerData {
+    private int totalShopsOwned;
+    private List<Integer> unlockedShops;
+    private List<MessageUtils.Message> messages;
+
+    public PlayerData(int totalShopsOwned, List<Integer> unlockedShops, List<MessageUtils.Message> messages) {
+        this.totalShopsOwned = totalShopsOwned;
+        this.unlockedShops = new ArrayList<>(unlockedShops);
+        this.messages = messages;
+    }
+
+    public synchronized int getTotalShopsOwned() {
+        return this.totalShopsOwned;
+    }
+
+    synchronized void setTotalShopsOwned(int number) {
+        this.totalShopsOwned = number;
+    }
+
+    synchronized void addShops(int delta) {
+        this.totalShopsOwned += delta;
+    }
+
+    /**
+     * Takes up one shop slot if the player owns fewer than {@code maxShops} shops.
+     *
+     * @param maxShops maximum number of shops the player may own
+     * @return {@code true} if a slot was taken up
+     */
+    synchronized boolean reserveShop(int maxShops) {
+        if (this.totalShopsOwned >= maxShops) {
+            return false;
+        }
+        this.totalShopsOwned++;
+        return true;
+    }
+
+    /**
+     * Returns a copy of the custom shops (represented by its custom model data)
+     * unlocked by the player.
+     *
+     * @return list of shops unlocked by the player
+     */
+    public synchronized List<Integer> getUnlockedShops() {
+        return new ArrayList<>(this.unlockedShops);
+    }
+
+    synchronized void setUnlockedShops(List<Integer> unlockedShops) {
+        this.unlockedShops = new ArrayList<>(unlockedShops);
+    }
+
+    synchronized boolean addUnlockedShop(int model) {
+        if (this.unlockedShops.contains(model)) {
+            return false;
+        }
+        return this.unlockedShops.add(model);
+    }
+
+    synchronized void removeUnlockedShops(Collection<Integer> models) {
+        this.unlockedShops.removeAll(models);
+    }
+
+    /**
+     * Returns the transaction messages that were pending when the data was loaded.
+     * They are kept for the rest of the session, so that the player can page
+     * through them.
+     *
+     * @return list of formatted messages, most recent first
+     */
+    public synchronized List<MessageUtils.Message> getMessages() {
+        return new ArrayList<>(this.messages);
+    }
+}
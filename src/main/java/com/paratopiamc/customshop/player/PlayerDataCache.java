@@ -0,0 +1,343 @@
+/*
+ *  This file is part of CustomShop. Copyright (c) 2021 Paratopia.
+ *
+ *  CustomShop is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  CustomShop is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with CustomShop. If not, see <https://www.gnu.org/licenses/>.
+ *
+ */
+package com.paratopiamc.customshop.player;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import com.paratopiamc.customshop.database.Database;
+import com.paratopiamc.customshop.plugin.CustomShop;
+import com.paratopiamc.customshop.plugin.IOExecutor;
+import com.paratopiamc.customshop.utils.MessageUtils;
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+import org.bukkit.scheduler.BukkitRunnable;
+
+/**
+ * Session-scoped cache of {@link PlayerData}. A player's data is loaded in one
+ * asynchronous batch when they join and evicted when they leave; reads for
+ * online players are served from memory and writes go through to the database.
+ * Reads never block: while a player's data is loading, they wait for the load,
+ * and players whose data is not cached at all (offline) are read from the
+ * database on the IO executor.
+ * <p>
+ * Writes made while a player's data is loading are not part of the loaded
+ * snapshot, which only reflects the writes made before the load started. They
+ * are kept and applied on top of the snapshot before it is cached.
+ */
+public class PlayerDataCache {
+    private final Database database;
+    private final IOExecutor executor;
+    private final Map<UUID, PlayerData> cache = new ConcurrentHashMap<>();
+    /** Loads in progress, by player. Guarded by itself. */
+    private final Map<UUID, PendingLoad> loading = new HashMap<>();
+
+    /** Load of a player's data, and the changes made to it in the meantime. */
+    private static class PendingLoad {
+        /** Completed once the data, with all changes applied, is cached. */
+        final CompletableFuture<PlayerData> installed = new CompletableFuture<>();
+        final List<Consumer<PlayerData>> changes = new ArrayList<>();
+    }
+
+    public PlayerDataCache(Database database, IOExecutor executor) {
+        this.database = database;
+        this.executor = executor;
+    }
+
+    /**
+     * Loads the data of the player asynchronously, then caches it and sends the
+     * player the first page of transactions that occurred while they were
+     * offline.
+     *
+     * @param player player that joined
+     */
+    public void load(Player player) {
+        UUID playerID = player.getUniqueId();
+        PendingLoad load = new PendingLoad();
+        CompletableFuture<PlayerData> snapshot;
+        // Any write from here on is tracked as a change, and none of them is part of
+        // the snapshot.
+        synchronized (loading) {
+            loading.put(playerID, load);
+            snapshot = database.loadPlayerData(playerID);
+        }
+        snapshot.thenAccept(data -> {
+            BukkitRunnable runnable = new BukkitRunnable() {
+                @Override
+                public void run() {
+                    install(player, load, data);
+                }
+            };
+            runnable.runTask(CustomShop.getPlugin());
+        }).whenComplete((result, throwable) -> {
+            if (throwable != null) {
+                synchronized (loading) {
+                    loading.remove(playerID, load);
+                }
+                load.installed.completeExceptionally(throwable);
+                throwable.printStackTrace();
+            }
+        });
+    }
+
+    /**
+     * Applies the changes made during the load to the loaded data and caches it,
+     * unless the player left in the meantime.
+     *
+     * @param player player whose data was loaded
+     * @param load   load that completed
+     * @param data   data as loaded
+     */
+    private void install(Player player, PendingLoad load, PlayerData data) {
+        UUID playerID = player.getUniqueId();
+        boolean cached;
+        synchronized (loading) {
+            load.changes.forEach(change -> change.accept(data));
+            // Player may have left before loading completed, in which case
+            // eviction has already happened.
+            cached = loading.remove(playerID, load) && player.isOnline();
+            if (cached) {
+                cache.put(playerID, data);
+            }
+        }
+        load.installed.complete(data);
+        if (cached) {
+            List<MessageUtils.Message> messages = data.getMessages();
+            if (!messages.isEmpty()) {
+                SalesDigest.sendPage(player, messages, 1);
+            }
+        }
+    }
+
+    /**
+     * Loads the data of every player that is online, for when the plugin is
+     * enabled while players are already on the server.
+     */
+    public void loadOnlinePlayers() {
+        Bukkit.getOnlinePlayers().forEach(this::load);
+    }
+
+    /**
+     * Removes the cached data of the player.
+     *
+     * @param player player that left
+     */
+    public void evict(Player player) {
+        synchronized (loading) {
+            loading.remove(player.getUniqueId());
+            cache.remove(player.getUniqueId());
+        }
+    }
+
+    /**
+     * Returns the cached data of the player.
+     *
+     * @param playerID UUID of player of interest
+     * @return {@code null} if the player's data is not cached
+     */
+    public PlayerData get(UUID playerID) {
+        return cache.get(playerID);
+    }
+
+    /**
+     * Returns the data of the player once it is cached, if it is being loaded.
+     *
+     * @param playerID UUID of player of interest
+     * @return {@code null} if the player's data is not being loaded
+     */
+    private CompletableFuture<PlayerData> pendingLoad(UUID playerID) {
+        synchronized (loading) {
+            PendingLoad load = loading.get(playerID);
+            return load == null ? null : load.installed;
+        }
+    }
+
+    /**
+     * Applies a change to the cached data of the player, or keeps it for the load
+     * in progress, and makes the corresponding write to the database. Both happen
+     * together, so that a load never sees the write without the change being
+     * kept for it.
+     *
+     * @param playerID UUID of player of interest
+     * @param change   change to the player's data
+     * @param write    write to the database
+     * @return result of {@code write}
+     */
+    private <T> T update(UUID playerID, Consumer<PlayerData> change, Supplier<T> write) {
+        synchronized (loading) {
+            PlayerData data = cache.get(playerID);
+            if (data != null) {
+                change.accept(data);
+            } else {
+                PendingLoad load = loading.get(playerID);
+                if (load != null) {
+                    load.changes.add(change);
+                }
+            }
+            return write.get();
+        }
+    }
+
+    /**
+     * Returns the list of custom shops (represented by its custom model data)
+     * unlocked by the player.
+     *
+     * @param player player of interest
+     * @return future completed with the list of shops unlocked by the player
+     */
+    public CompletableFuture<List<Integer>> getUnlockedShops(Player player) {
+        PlayerData data = cache.get(player.getUniqueId());
+        if (data != null) {
+            return CompletableFuture.completedFuture(data.getUnlockedShops());
+        }
+        CompletableFuture<PlayerData> load = pendingLoad(player.getUniqueId());
+        if (load != null) {
+            return load.thenApply(PlayerData::getUnlockedShops);
+        }
+        return executor.supply(() -> database.getUnlockedShops(player));
+    }
+
+    /**
+     * Replaces the list of custom shops unlocked by the player.
+     *
+     * @param player        player of interest
+     * @param unlockedShops new list of unlocked shops
+     */
+    public void setUnlockedShops(Player player, List<Integer> unlockedShops) {
+        update(player.getUniqueId(), data -> data.setUnlockedShops(unlockedShops), () -> {
+            database.setUnlockedShops(player, unlockedShops);
+            return null;
+        });
+    }
+
+    /**
+     * Adds a shop to the shops unlocked by the player, writing only that shop to
+     * the database.
+     *
+     * @param player player of interest
+     * @param model  custom model data of the shop
+     */
+    public void addUnlockedShop(Player player, int model) {
+        update(player.getUniqueId(), data -> data.addUnlockedShop(model), () -> {
+            database.addUnlockedShop(player, model);
+            return null;
+        });
+    }
+
+    /**
+     * Removes shops from the shops unlocked by the player, writing only those
+     * shops to the database.
+     *
+     * @param player player of interest
+     * @param models custom model data of the shops
+     */
+    public void removeUnlockedShops(Player player, Collection<Integer> models) {
+        update(player.getUniqueId(), data -> data.removeUnlockedShops(models), () -> {
+            database.removeUnlockedShops(player, models);
+            return null;
+        });
+    }
+
+    /**
+     * Returns the total number of shops owned by player.
+     *
+     * @param playerID UUID of player of interest
+     * @return future completed with the number of shops owned
+     */
+    public CompletableFuture<Integer> getTotalShopsOwned(UUID playerID) {
+        PlayerData data = cache.get(playerID);
+        if (data != null) {
+            return CompletableFuture.completedFuture(data.getTotalShopsOwned());
+        }
+        CompletableFuture<PlayerData> load = pendingLoad(playerID);
+        if (load != null) {
+            return load.thenApply(PlayerData::getTotalShopsOwned);
+        }
+        return executor.supply(() -> database.getTotalShopOwned(playerID));
+    }
+
+    /**
+     * Sets the total number of shops owned by player.
+     *
+     * @param playerID UUID of player of interest
+     * @param number   updated number of shops owned
+     * @return future completed with the shop count once it is committed
+     */
+    public CompletableFuture<Integer> setShopsOwned(UUID playerID, int number) {
+        return update(playerID, data -> data.setTotalShopsOwned(number),
+                () -> database.setShopsOwned(playerID, number));
+    }
+
+    /**
+     * Decrements the total number of custom shops owned by the player, e.g. when a
+     * shop is removed or a reserved slot is released.
+     *
+     * @param playerID UUID of player of interest
+     * @return future completed with the shop count once it is committed
+     */
+    public CompletableFuture<Integer> decrementTotalShopsOwned(UUID playerID) {
+        return update(playerID, data -> data.addShops(-1), () -> database.decrementTotalShopsOwned(playerID));
+    }
+
+    /**
+     * Takes up one shop slot for the player, unless they already own
+     * {@code maxShops} shops. For cached players the check is made in memory and
+     * the future is already completed, and players whose data is loading are
+     * checked once it is cached. Otherwise the slot is reserved with an atomic
+     * database increment and released again if it exceeds the limit. A reserved
+     * slot must be released through {@link #decrementTotalShopsOwned(UUID)} if no
+     * shop ends up being created.
+     *
+     * @param playerID UUID of player of interest
+     * @param maxShops maximum number of shops the player may own
+     * @return future completed with whether a slot was reserved
+     */
+    public CompletableFuture<Boolean> reserveShop(UUID playerID, int maxShops) {
+        CompletableFuture<Integer> increment;
+        synchronized (loading) {
+            PlayerData data = cache.get(playerID);
+            if (data != null) {
+                if (!data.reserveShop(maxShops)) {
+                    return CompletableFuture.completedFuture(false);
+                }
+                database.incrementTotalShopsOwned(playerID);
+                return CompletableFuture.completedFuture(true);
+            }
+            PendingLoad load = loading.get(playerID);
+            if (load != null) {
+                return load.installed.thenCompose(loaded -> reserveShop(playerID, maxShops));
+            }
+            increment = database.incrementTotalShopsOwned(playerID);
+        }
+        return increment.thenApply(number -> {
+            if (number > maxShops) {
+                // Goes through the cache, as the player may have joined since.
+                decrementTotalShopsOwned(playerID);
+                return false;
+            }
+            return true;
+        });
+    }
+}
@@ -18,10 +18,7 @@
 
 package com.paratopiamc.customshop.player;
 
-import java.util.List;
-import java.util.concurrent.CompletableFuture;
 import com.paratopiamc.customshop.plugin.CustomShop;
-import com.paratopiamc.customshop.utils.MessageUtils;
 
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.Listener;
@@ -30,18 +27,13 @@ import org.bukkit.event.player.PlayerJoinEvent;
 /** PlayerJoinEvent's handlers */
 public class PlayerJoin implements Listener {
     /**
-     * Fetching and send messages for transactions that occurred while the player is
-     * offline.
+     * Loads the player's data into the cache and sends messages for transactions
+     * that occurred while the player is offline.
      *
      * @param evt player join event
      */
     @EventHandler
     public void onJoin(PlayerJoinEvent evt) {
-        CompletableFuture.runAsync(() -> {
-            CustomShop plugin = CustomShop.getPlugin();
-            List<MessageUtils.Message> messages = plugin.getDatabase()
-                    .getMessages(evt.getPlayer().getUniqueId().toString());
-            messages.forEach(e -> plugin.support().sendMessage(evt.getPlayer(), e));
-        });
+        CustomShop.getPlugin().getPlayerData().load(evt.getPlayer());
     }
 }
@@ -18,6 +18,7 @@
 
 package com.paratopiamc.customshop.player;
 
+import com.paratopiamc.customshop.plugin.CustomShop;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.Listener;
 import org.bukkit.event.player.PlayerKickEvent;
@@ -34,16 +35,18 @@ public class PlayerLeave implements Listener {
      */
     @EventHandler
     public void playerKick(PlayerKickEvent evt) {
-        PlayerState.getPlayerState(evt.getPlayer()).clearShopInteractions();
+        PlayerState.clearShopInteractions(evt.getPlayer());
     }
 
     /**
-     * Handler in event player leaves with GUI opened or in conversation.
+     * Handler in event player leaves with GUI opened or in conversation. The
+     * player's state and cached player data are evicted as well.
      *
      * @param evt event of player leaving
      */
     @EventHandler
     public void playerLeave(PlayerQuitEvent evt) {
-        PlayerState.getPlayerState(evt.getPlayer()).clearShopInteractions();
+        PlayerState.removePlayerState(evt.getPlayer());
+        CustomShop.getPlugin().getPlayerData().evict(evt.getPlayer());
     }
 }
@@ -18,8 +18,14 @@
 
 package com.paratopiamc.customshop.player;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
-import java.util.Optional;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import com.paratopiamc.customshop.gui.CreationGUI;
 import com.paratopiamc.customshop.gui.ShopGUI;
 import com.paratopiamc.customshop.plugin.CustomShop;
@@ -37,8 +43,17 @@ import org.bukkit.scheduler.BukkitRunnable;
  * reboots should be saved here.
  */
 public class PlayerState {
-    /** Mapping of player to player state. */
-    private static HashMap<Player, PlayerState> playerStates = new HashMap<>();
+    /**
+     * Mapping of player's UUID to player state. States are created when a player
+     * starts interacting with shops and removed when the player leaves.
+     */
+    private static HashMap<UUID, PlayerState> playerStates = new HashMap<>();
+    /**
+     * Mapping of the UUID of each shop's armor stand to the lock held by the
+     * players viewing it. A shop is locked by each viewer for as long as the
+     * viewer's {@link ShopGUI} is set.
+     */
+    private static final ConcurrentHashMap<UUID, ShopLock> shopLocks = new ConcurrentHashMap<>();
 
     private ShopGUI shopGUI;
     private ItemStack transactionItem;
@@ -50,18 +65,20 @@ public class PlayerState {
 
     private PlayerState(Player player) {
         this.player = player;
-        playerStates.put(player, this);
+        playerStates.put(player.getUniqueId(), this);
     }
 
     /**
      * Factory method to construct player state and create reference from player if
-     * not already existing.
+     * not already existing. Called when the player starts interacting with shops;
+     * handlers of events that every player triggers should use
+     * {@link #findPlayerState(Player)} instead.
      *
      * @param player player of interest
      * @return player state associated with the player
      */
     public static PlayerState getPlayerState(Player player) {
-        PlayerState result = playerStates.get(player);
+        PlayerState result = playerStates.get(player.getUniqueId());
         if (result == null) {
             return new PlayerState(player);
         } else {
@@ -69,6 +86,43 @@ public class PlayerState {
         }
     }
 
+    /**
+     * Returns the player state of the player without creating one.
+     *
+     * @param player player of interest
+     * @return {@code null} if the player never interacted with shops since joining
+     */
+    public static PlayerState findPlayerState(Player player) {
+        return playerStates.get(player.getUniqueId());
+    }
+
+    /**
+     * Returns the player states of every player who interacted with shops since
+     * joining.
+     *
+     * @return view of the player states
+     */
+    static Collection<PlayerState> getPlayerStates() {
+        return playerStates.values();
+    }
+
+    Player getPlayer() {
+        return this.player;
+    }
+
+    /**
+     * Removes the player state of a leaving player, clearing the player's shop
+     * interactions first.
+     *
+     * @param player player who left
+     */
+    public static void removePlayerState(Player player) {
+        PlayerState state = playerStates.remove(player.getUniqueId());
+        if (state != null) {
+            state.clearShopInteractions();
+        }
+    }
+
     /**
      * Returns the current shop item (player head) used to unlock the shop within 5
      * seconds of its first placement.
@@ -100,8 +154,8 @@ public class PlayerState {
         this.unlockingShop.runTaskLater(CustomShop.getPlugin(), 45);
     }
 
-    public CreationGUI createCreationGUI(boolean isAdmin) {
-        this.creationGUI = new CreationGUI(this.player, isAdmin);
+    public CreationGUI createCreationGUI(boolean isAdmin, List<Integer> unlockedShops) {
+        this.creationGUI = new CreationGUI(this.player, isAdmin, unlockedShops);
         return this.creationGUI;
     }
 
@@ -119,13 +173,45 @@ public class PlayerState {
     }
 
     /**
-     * Setter for ShopGUI if there isn't already one assigned to the player. It is
-     * expected for {@link #clearShopInteractions()} to be called before this.
+     * Setter for ShopGUI of a customer, see {@link #setShopGUI(ShopGUI, boolean)}.
+     * Any number of customers may use a shop at the same time.
      *
      * @param gui a {@link ShopGUI} object
+     * @return {@code true} if the GUI was set
+     */
+    public boolean setShopGUI(ShopGUI gui) {
+        return setShopGUI(gui, false);
+    }
+
+    /**
+     * Setter for ShopGUI if there isn't already one assigned to the player. It is
+     * expected for {@link #clearShopInteractions()} to be called before this. The
+     * shop is locked by the player until the GUI is cleared, and the GUI is not
+     * set if the lock cannot be acquired. Customers share the lock with each
+     * other, while owners editing the shop hold it exclusively.
+     *
+     * @param gui       a {@link ShopGUI} object
+     * @param exclusive whether the player edits the shop, as opposed to trading
+     *                  with it
+     * @return {@code true} if the GUI was set
      */
-    public void setShopGUI(ShopGUI gui) {
+    public boolean setShopGUI(ShopGUI gui, boolean exclusive) {
+        UUID shopID = gui.getArmorStand().getUniqueId();
+        UUID viewerID = this.player.getUniqueId();
+        boolean[] acquired = new boolean[1];
+        shopLocks.compute(shopID, (id, lock) -> {
+            lock = lock == null ? new ShopLock() : lock;
+            acquired[0] = lock.acquire(viewerID, exclusive);
+            return lock.isFree() ? null : lock;
+        });
+        if (!acquired[0]) {
+            return false;
+        }
+        if (this.shopGUI != null && !this.shopGUI.getArmorStand().getUniqueId().equals(shopID)) {
+            releaseShop();
+        }
         this.shopGUI = gui;
+        return true;
     }
 
     /**
@@ -139,17 +225,100 @@ public class PlayerState {
     }
 
     /**
-     * Get the player interacting with it.
+     * Get a player interacting with it, the owner editing the shop if any.
      *
      * @param armorStand the target {@link ArmorStand}
      * @return player interacting with the armor stand
      */
     public static Player getInteractingPlayer(ArmorStand armorStand) {
-        return playerStates.entrySet().stream()
-                .filter(e -> armorStand.getUniqueId()
-                        .equals(Optional.ofNullable(e.getValue().shopGUI).map(gui -> gui.getArmorStand())
-                                .map(stand -> stand.getUniqueId()).orElse(null)))
-                .findFirst().map(e -> e.getKey()).orElse(null);
+        ShopLock lock = shopLocks.get(armorStand.getUniqueId());
+        UUID viewerID = lock == null ? null : lock.getHolder();
+        return viewerID == null ? null : Bukkit.getPlayer(viewerID);
+    }
+
+    /**
+     * Returns the GUIs of every player viewing the shop, customers and owner
+     * alike.
+     *
+     * @param armorStand the target {@link ArmorStand}
+     * @return GUIs opened on the armor stand
+     */
+    public static List<ShopGUI> getShopGUIs(ArmorStand armorStand) {
+        List<UUID> viewerIDs = new ArrayList<>();
+        shopLocks.computeIfPresent(armorStand.getUniqueId(), (id, lock) -> {
+            lock.addHolders(viewerIDs);
+            return lock;
+        });
+        List<ShopGUI> result = new ArrayList<>(viewerIDs.size());
+        for (UUID viewerID : viewerIDs) {
+            PlayerState state = playerStates.get(viewerID);
+            ShopGUI gui = state == null ? null : state.getShopGUI();
+            if (gui != null && gui.getArmorStand().equals(armorStand)) {
+                result.add(gui);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Releases the lock on the shop of the player's ShopGUI, if the player holds
+     * it.
+     */
+    private void releaseShop() {
+        UUID viewerID = this.player.getUniqueId();
+        shopLocks.computeIfPresent(this.shopGUI.getArmorStand().getUniqueId(), (id, lock) -> {
+            lock.release(viewerID);
+            return lock.isFree() ? null : lock;
+        });
+    }
+
+    /**
+     * Lock on a shop, held either by any number of customers or by one player
+     * editing the shop. Only modified within {@link ConcurrentHashMap#compute}.
+     */
+    private static final class ShopLock {
+        private UUID exclusiveHolder;
+        private final Set<UUID> sharedHolders = new HashSet<>(4);
+
+        private boolean acquire(UUID viewerID, boolean exclusive) {
+            if (this.exclusiveHolder != null && !this.exclusiveHolder.equals(viewerID)) {
+                return false;
+            }
+            if (exclusive) {
+                if (this.sharedHolders.size() > (this.sharedHolders.contains(viewerID) ? 1 : 0)) {
+                    return false;
+                }
+                this.sharedHolders.remove(viewerID);
+                this.exclusiveHolder = viewerID;
+            } else {
+                this.exclusiveHolder = null;
+                this.sharedHolders.add(viewerID);
+            }
+            return true;
+        }
+
+        private void release(UUID viewerID) {
+            if (viewerID.equals(this.exclusiveHolder)) {
+                this.exclusiveHolder = null;
+            }
+            this.sharedHolders.remove(viewerID);
+        }
+
+        private boolean isFree() {
+            return this.exclusiveHolder == null && this.sharedHolders.isEmpty();
+        }
+
+        private void addHolders(Collection<UUID> holders) {
+            if (this.exclusiveHolder != null) {
+                holders.add(this.exclusiveHolder);
+            }
+            holders.addAll(this.sharedHolders);
+        }
+
+        private UUID getHolder() {
+            return this.exclusiveHolder != null ? this.exclusiveHolder
+                    : this.sharedHolders.isEmpty() ? null : this.sharedHolders.iterator().next();
+        }
     }
 
     /**
@@ -224,6 +393,7 @@ public class PlayerState {
         abandonConversation();
         if (this.shopGUI != null) {
             this.shopGUI.saveInventories();
+            releaseShop();
             this.shopGUI = null;
         }
         if (this.creationGUI != null) {
@@ -231,10 +401,22 @@ public class PlayerState {
         }
     }
 
+    /**
+     * Clear the player's shop interactions, if the player has a player state.
+     *
+     * @param player player of interest
+     */
+    public static void clearShopInteractions(Player player) {
+        PlayerState state = findPlayerState(player);
+        if (state != null) {
+            state.clearShopInteractions();
+        }
+    }
+
     /**
      * Clear all players' shop interactions, if any.
      */
     public static void clearAllShopInteractions() {
-        playerStates.forEach((player, state) -> state.clearShopInteractions());
+        playerStates.values().forEach(PlayerState::clearShopInteractions);
     }
 }
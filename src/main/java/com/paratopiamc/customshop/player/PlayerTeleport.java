@@ -34,6 +34,6 @@ public class PlayerTeleport implements Listener {
      */
     @EventHandler
     public void onTeleport(PlayerTeleportEvent evt) {
-        PlayerState.getPlayerState(evt.getPlayer()).clearShopInteractions();
+        PlayerState.clearShopInteractions(evt.getPlayer());
     }
 }
@@ -0,0 +1,74 @@
+/*
+ *  This file is part of CustomShop. Copyright (c) 2021 Paratopia.
+ *
+ *  CustomShop is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  CustomShop is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with CustomShop. If not, see <https://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.paratopiamc.customshop.player;
+
+import com.paratopiamc.customshop.gui.ShopGUI;
+import org.bukkit.Location;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitRunnable;
+
+/**
+ * Abandons shop interactions of players who moved more than {@link #RANGE}
+ * blocks away from the shop's armor stand. Runs every {@link #PERIOD} ticks and
+ * only looks at players with a shop GUI set, comparing block coordinates, so
+ * that player movement costs nothing otherwise.
+ */
+public class ProximityWatchdog extends BukkitRunnable {
+    /** Distance in blocks that a player may move away from the shop. */
+    private static final int RANGE = 5;
+    /** Ticks between each check. */
+    private static final long PERIOD = 10;
+
+    /** Reused to read locations without allocating. */
+    private final Location playerLocation = new Location(null, 0, 0, 0);
+    private final Location shopLocation = new Location(null, 0, 0, 0);
+
+    /**
+     * Schedules the watchdog. Called once in plugin's {@code onEnable()}.
+     *
+     * @param plugin plugin scheduling the task
+     */
+    public void start(Plugin plugin) {
+        runTaskTimer(plugin, PERIOD, PERIOD);
+    }
+
+    @Override
+    public void run() {
+        for (PlayerState state : PlayerState.getPlayerStates()) {
+            ShopGUI gui = state.getShopGUI();
+            if (gui == null) {
+                continue;
+            }
+            Player player = state.getPlayer();
+            player.getLocation(playerLocation);
+            gui.getArmorStand().getLocation(shopLocation);
+            if (playerLocation.getWorld() != shopLocation.getWorld()) {
+                state.clearShopInteractions();
+                continue;
+            }
+            int dx = playerLocation.getBlockX() - shopLocation.getBlockX();
+            int dy = playerLocation.getBlockY() - shopLocation.getBlockY();
+            int dz = playerLocation.getBlockZ() - shopLocation.getBlockZ();
+            if (dx * dx + dy * dy + dz * dz > RANGE * RANGE) {
+                state.clearShopInteractions();
+            }
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ *  This file is part of CustomShop. Copyright (c) 2021 Paratopia.
+ *
+ *  CustomShop is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  CustomShop is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with CustomShop. If not, see <https://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.paratopiamc.customshop.player;
+
+import java.util.List;
+import com.paratopiamc.customshop.plugin.CSComd;
+import com.paratopiamc.customshop.plugin.CustomShop;
+import com.paratopiamc.customshop.utils.LanguageUtils;
+import com.paratopiamc.customshop.utils.MessageUtils;
+import org.bukkit.command.CommandSender;
+import org.bukkit.entity.Player;
+
+/**
+ * Shows the sender a page of the sales made while they were offline, as loaded
+ * when they joined.
+ */
+public class SalesDigest extends CSComd {
+    /** Number of messages shown per page. */
+    private static final int PAGE_SIZE = 8;
+
+    public SalesDigest(CommandSender sender, String[] args) {
+        super(sender, args);
+    }
+
+    @Override
+    public boolean exec() {
+        if (!(sender instanceof Player)) {
+            return false;
+        }
+        Player player = (Player) sender;
+        int page = 1;
+        if (args.length >= 2) {
+            try {
+                page = Integer.parseInt(args[1]);
+            } catch (NumberFormatException e) {
+                player.sendMessage(LanguageUtils.getString("invalid-input"));
+                return false;
+            }
+        }
+        PlayerData data = CustomShop.getPlugin().getPlayerData().get(player.getUniqueId());
+        List<MessageUtils.Message> messages = data == null ? null : data.getMessages();
+        if (messages == null || messages.isEmpty()) {
+            player.sendMessage(LanguageUtils.getString("offline-sales-none"));
+            return true;
+        }
+        sendPage(player, messages, page);
+        return true;
+    }
+
+    /**
+     * Sends a page of offline sale messages to the player, followed by a hint to
+     * the next page if there is one. Pages out of range are clamped.
+     *
+     * @param player   player to send the page to
+     * @param messages every offline sale message of the player
+     * @param page     page number, starting from 1
+     */
+    static void sendPage(Player player, List<MessageUtils.Message> messages, int page) {
+        int pages = (messages.size() + PAGE_SIZE - 1) / PAGE_SIZE;
+        page = Math.max(1, Math.min(page, pages));
+        CustomShop plugin = CustomShop.getPlugin();
+        player.sendMessage(String.format(LanguageUtils.getString("offline-sales-header"), page, pages));
+        int end = Math.min(messages.size(), page * PAGE_SIZE);
+        for (MessageUtils.Message message : messages.subList((page - 1) * PAGE_SIZE, end)) {
+            plugin.support().sendMessage(player, message);
+        }
+        if (page < pages) {
+            player.sendMessage(String.format(LanguageUtils.getString("offline-sales-more"), page + 1));
+        }
+    }
+}
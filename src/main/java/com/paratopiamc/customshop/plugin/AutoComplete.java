@@ -34,7 +34,7 @@ public class AutoComplete implements TabCompleter {
     @Override
     public List<String> onTabComplete(CommandSender sender, Command command, String alias, String[] args) {
         if (args.length == 1) {
-            String[] array = new String[] { "newshop", "gettotal", "getshopowner" };
+            String[] array = new String[] { "newshop", "gettotal", "getshopowner", "messages" };
             List<String> subCommands = new ArrayList<>(Arrays.asList(array));
             if (sender.hasPermission("customshop.removeshop.command")) {
                 subCommands.add("removeshop");
@@ -45,6 +45,9 @@ public class AutoComplete implements TabCompleter {
             if (sender.hasPermission("customshop.setcount")) {
                 subCommands.add("setcount");
             }
+            if (sender.hasPermission("customshop.listshops")) {
+                subCommands.add("listshops");
+            }
             if (sender.hasPermission("customshop.reload")) {
                 subCommands.add("reload");
             }
@@ -53,7 +56,8 @@ public class AutoComplete implements TabCompleter {
             }
             return subCommands;
         } else if (args.length == 2 && ((args[0].equals("lockall") && sender.hasPermission("customshop.lockall"))
-                || (args[0].equals("setcount") && sender.hasPermission("customshop.setcount")))) {
+                || (args[0].equals("setcount") && sender.hasPermission("customshop.setcount"))
+                || (args[0].equals("listshops") && sender.hasPermission("customshop.listshops")))) {
             return CustomShop.getPlugin().getServer().getOnlinePlayers().stream().map(p -> p.getName())
                     .collect(Collectors.toList());
         } else {
@@ -21,7 +21,9 @@ package com.paratopiamc.customshop.plugin;
 import com.paratopiamc.customshop.crate.GiveHead;
 import com.paratopiamc.customshop.crate.GetTotal;
 import com.paratopiamc.customshop.crate.LockAll;
+import com.paratopiamc.customshop.player.SalesDigest;
 import com.paratopiamc.customshop.shop.GetShopOwner;
+import com.paratopiamc.customshop.shop.ListShops;
 import com.paratopiamc.customshop.shop.SetShopCount;
 import com.paratopiamc.customshop.shop.ShopCreation;
 import com.paratopiamc.customshop.shop.ShopRemoval;
@@ -60,6 +62,12 @@ public class CSComdExec implements CommandExecutor {
             case "setcount":
                 comd = new SetShopCount(sender, args);
                 break;
+            case "listshops":
+                comd = new ListShops(sender, args);
+                break;
+            case "messages":
+                comd = new SalesDigest(sender, args);
+                break;
             case "getshopowner":
                 comd = new GetShopOwner(sender);
                 break;
@@ -21,23 +21,30 @@ package com.paratopiamc.customshop.plugin;
 import net.milkbowl.vault.economy.Economy;
 import com.paratopiamc.customshop.crate.UnlockShop;
 import com.paratopiamc.customshop.database.Database;
+import com.paratopiamc.customshop.database.MySQL;
 import com.paratopiamc.customshop.database.SQLite;
 import com.paratopiamc.customshop.gui.CreationGUI;
 import com.paratopiamc.customshop.player.PlayerJoin;
 import com.paratopiamc.customshop.player.PlayerLeave;
-import com.paratopiamc.customshop.player.PlayerMove;
+import com.paratopiamc.customshop.player.PlayerDataCache;
 import com.paratopiamc.customshop.player.PlayerState;
 import com.paratopiamc.customshop.player.PlayerTeleport;
+import com.paratopiamc.customshop.player.ProximityWatchdog;
 import com.paratopiamc.customshop.plugin.CustomShopLogger.Level;
 import com.paratopiamc.customshop.shop.ShopCreation;
 import com.paratopiamc.customshop.shop.ShopExit;
+import com.paratopiamc.customshop.shop.ShopChunkTracker;
+import com.paratopiamc.customshop.shop.ShopIndex;
 import com.paratopiamc.customshop.shop.ShopOpening;
+import com.paratopiamc.customshop.shop.ShopRegistry;
 import com.paratopiamc.customshop.shop.ShopRemoval;
+import com.paratopiamc.customshop.shop.TradePipeline;
 import com.paratopiamc.customshop.shop.briefcase.BriefcaseInteractInventory;
 import com.paratopiamc.customshop.shop.briefcase.BriefcaseListItem;
 import com.paratopiamc.customshop.shop.vm.VMInteractInventory;
 import com.paratopiamc.customshop.shop.vm.VMListItem;
 import com.paratopiamc.customshop.utils.LanguageUtils;
+import com.paratopiamc.customshop.utils.ShopTags;
 import org.bukkit.command.PluginCommand;
 import org.bukkit.plugin.PluginManager;
 import org.bukkit.plugin.RegisteredServiceProvider;
@@ -52,6 +59,11 @@ public final class CustomShop extends JavaPlugin {
     private static CustomShop pluginInstance;
     private Economy economy;
     private Database database;
+    private IOExecutor ioExecutor;
+    private TradePipeline tradePipeline;
+    private PlayerDataCache playerData;
+    private ShopRegistry shopRegistry;
+    private ShopIndex shopIndex;
     private ExternalPluginsSupport support;
 
     @Override
@@ -76,6 +88,9 @@ public final class CustomShop extends JavaPlugin {
                 e.printStackTrace();
             }
         }
+        ShopTags.initialize(this);
+        this.shopIndex = new ShopIndex();
+        ShopChunkTracker chunkTracker = new ShopChunkTracker(this.shopIndex);
         PluginManager pluginManager = getServer().getPluginManager();
         pluginManager.registerEvents(new ShopOpening(), this);
         pluginManager.registerEvents(new ShopExit(), this);
@@ -87,24 +102,56 @@ public final class CustomShop extends JavaPlugin {
         pluginManager.registerEvents(new ShopRemoval(), this);
         pluginManager.registerEvents(new UnlockShop(), this);
         pluginManager.registerEvents(new PlayerTeleport(), this);
-        pluginManager.registerEvents(new PlayerMove(), this);
         pluginManager.registerEvents(new PlayerLeave(), this);
         pluginManager.registerEvents(new PlayerJoin(), this);
+        pluginManager.registerEvents(chunkTracker, this);
+        if (ShopChunkTracker.hasEntitiesEvents()) {
+            pluginManager.registerEvents(chunkTracker.entitiesListener(), this);
+        }
         PluginCommand mainCommand = getCommand("customshop");
         mainCommand.setExecutor(new CSComdExec());
         mainCommand.setTabCompleter(new AutoComplete());
 
-        this.database = new SQLite(this);
+        if ("mysql".equalsIgnoreCase(getConfig().getString("database.type", "sqlite"))) {
+            this.database = new MySQL(this);
+        } else {
+            this.database = new SQLite(this);
+        }
         this.database.load();
+        this.ioExecutor = new IOExecutor(getConfig().getInt("database.io-threads", 2),
+                getConfig().getInt("database.io-queue-size", 256), getLogger());
+        this.playerData = new PlayerDataCache(this.database, this.ioExecutor);
+        this.tradePipeline = new TradePipeline(this, this.economy, this.database,
+                getConfig().getInt("database.io-queue-size", 256));
+        this.tradePipeline.reconcile();
+        this.shopRegistry = new ShopRegistry(this.database);
+        this.shopRegistry.load();
+        chunkTracker.start(this);
+        new ProximityWatchdog().start(this);
 
         saveDefaultConfig();
         LanguageUtils.loadLanguageConfig();
         CreationGUI.initialize();
+        this.playerData.loadOnlinePlayers();
     }
 
     @Override
     public void onDisable() {
+        // Outstanding payments are settled while their shops are still open.
+        if (this.tradePipeline != null) {
+            this.tradePipeline.shutdown();
+        }
         PlayerState.clearAllShopInteractions();
+        if (this.shopIndex != null) {
+            this.shopIndex.flushAll();
+        }
+        // Queued reads may still enqueue writes, so they finish before the database closes.
+        if (this.ioExecutor != null) {
+            this.ioExecutor.shutdown();
+        }
+        if (this.database != null) {
+            this.database.close();
+        }
         super.onDisable();
     }
 
@@ -154,6 +201,51 @@ public final class CustomShop extends JavaPlugin {
         return this.database;
     }
 
+    /**
+     * Return executor for blocking I/O such as database reads.
+     *
+     * @return I/O executor
+     */
+    public IOExecutor getIOExecutor() {
+        return this.ioExecutor;
+    }
+
+    /**
+     * Return pipeline that makes the payments of shop trades.
+     *
+     * @return trade pipeline
+     */
+    public TradePipeline getTradePipeline() {
+        return this.tradePipeline;
+    }
+
+    /**
+     * Return cache of data of online players.
+     *
+     * @return player data cache
+     */
+    public PlayerDataCache getPlayerData() {
+        return this.playerData;
+    }
+
+    /**
+     * Return registry of all custom shops.
+     *
+     * @return shop registry
+     */
+    public ShopRegistry getShopRegistry() {
+        return this.shopRegistry;
+    }
+
+    /**
+     * Return spatial index of loaded custom shops.
+     *
+     * @return shop index
+     */
+    public ShopIndex getShopIndex() {
+        return this.shopIndex;
+    }
+
     public ExternalPluginsSupport support() {
         return this.support;
     }
@@ -0,0 +1,140 @@
+/*
+ *  This file is part of CustomShop. Copyright (c) 2021 Paratopia.
+ *
+ *  CustomShop is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  CustomShop is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with CustomShop. If not, see <https://www.gnu.org/licenses/>.
+ *
+ */
+package com.paratopiamc.customshop.plugin;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Bounded executor owned by the plugin for blocking I/O, i.e. database reads.
+ * Keeps such work off the JVM-wide common pool, which is shared with the server
+ * and other plugins and is sized for CPU work. Tasks that do not fit in the
+ * queue are rejected rather than run on the calling (main) thread; the returned
+ * future then completes exceptionally.
+ */
+public class IOExecutor {
+    /** Log every this many rejections, so that a stalled database does not flood the console. */
+    private static final long REJECTION_LOG_INTERVAL = 100;
+
+    private final ThreadPoolExecutor executor;
+    private final String name;
+    private final Logger logger;
+    private final AtomicLong rejected = new AtomicLong();
+
+    /**
+     * Constructor for the executor. Threads are started on demand and stop after
+     * being idle for a minute.
+     *
+     * @param threads   maximum number of threads
+     * @param queueSize maximum number of tasks waiting for a thread
+     * @param logger    logger for rejections
+     */
+    public IOExecutor(int threads, int queueSize, Logger logger) {
+        this("IO", threads, queueSize, logger);
+    }
+
+    /**
+     * Constructor for an executor with named threads, e.g. one dedicated to a
+     * single kind of work.
+     *
+     * @param name      name of the threads, suffixed with their number
+     * @param threads   maximum number of threads
+     * @param queueSize maximum number of tasks waiting for a thread
+     * @param logger    logger for rejections
+     */
+    public IOExecutor(String name, int threads, int queueSize, Logger logger) {
+        AtomicInteger count = new AtomicInteger();
+        int size = Math.max(1, threads);
+        this.executor = new ThreadPoolExecutor(size, size, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueSize)), runnable -> {
+                    Thread thread = new Thread(runnable, "CustomShop-" + name + "-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.executor.allowCoreThreadTimeOut(true);
+        this.name = name;
+        this.logger = logger;
+    }
+
+    /**
+     * Runs {@code task} on the executor.
+     *
+     * @param task task to run
+     * @return future completed with the result of the task
+     */
+    public <T> CompletableFuture<T> supply(Supplier<T> task) {
+        try {
+            return CompletableFuture.supplyAsync(task, executor);
+        } catch (RejectedExecutionException ex) {
+            long total = rejected.incrementAndGet();
+            if (total % REJECTION_LOG_INTERVAL == 1) {
+                logger.log(Level.WARNING, name + " queue is full, " + total + " task(s) rejected so far");
+            }
+            CompletableFuture<T> result = new CompletableFuture<>();
+            result.completeExceptionally(ex);
+            return result;
+        }
+    }
+
+    /**
+     * Runs {@code task} on the executor.
+     *
+     * @param task task to run
+     * @return future completed once the task has run
+     */
+    public CompletableFuture<Void> run(Runnable task) {
+        return supply(() -> {
+            task.run();
+            return null;
+        });
+    }
+
+    /**
+     * Returns the number of tasks rejected because the queue was full.
+     *
+     * @return number of rejected tasks
+     */
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    /**
+     * Stops accepting tasks and waits up to 10 seconds for queued tasks to finish.
+     * Called on plugin disable, before the database is closed.
+     */
+    public void shutdown() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+                logger.log(Level.WARNING, "Timed out waiting for " + name + " tasks, "
+                        + executor.shutdownNow().size() + " task(s) dropped");
+            }
+        } catch (InterruptedException ex) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ *  This file is part of CustomShop. Copyright (c) 2021 Paratopia.
+ *
+ *  CustomShop is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  CustomShop is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with CustomShop. If not, see <https://www.gnu.org/licenses/>.
+ *
+ */
+package com.paratopiamc.customshop.shop;
+
+import java.util.List;
+import com.paratopiamc.customshop.plugin.CSComd;
+import com.paratopiamc.customshop.plugin.CustomShop;
+import com.paratopiamc.customshop.utils.LanguageUtils;
+import org.bukkit.Bukkit;
+import org.bukkit.OfflinePlayer;
+import org.bukkit.World;
+import org.bukkit.command.CommandSender;
+
+/** Lists the custom shops of the specified player, as recorded in the shop registry. */
+public class ListShops extends CSComd {
+    public ListShops(CommandSender sender, String[] args) {
+        super(sender, args);
+    }
+
+    @Override
+    public boolean exec() {
+        if (!sender.hasPermission("customshop.listshops")) {
+            sender.sendMessage(LanguageUtils.getString("command-no-perms"));
+            return false;
+        }
+        if (args.length < 2) {
+            sender.sendMessage("§cInvalid number of arguments!");
+            return false;
+        }
+        OfflinePlayer player = getPlayer(args[1]);
+        if (player == null) {
+            sender.sendMessage("§cCannot find specified player!");
+            return false;
+        }
+        List<RegisteredShop> shops = CustomShop.getPlugin().getShopRegistry().getShops(player.getUniqueId());
+        sender.sendMessage("§a" + player.getName() + " owns " + shops.size() + " registered shop(s):");
+        for (RegisteredShop shop : shops) {
+            World world = Bukkit.getWorld(shop.getWorldID());
+            String worldName = world == null ? shop.getWorldID().toString() : world.getName();
+            sender.sendMessage("§7- " + shop.getType().name().toLowerCase() + (shop.isAdmin() ? " (admin)" : "")
+                    + " at " + worldName + " " + shop.getX() + ", " + shop.getY() + ", " + shop.getZ());
+        }
+        return true;
+    }
+
+    private static OfflinePlayer getPlayer(String name) {
+        OfflinePlayer player = Bukkit.getPlayerExact(name);
+        if (player != null) {
+            return player;
+        }
+        for (OfflinePlayer offlinePlayer : Bukkit.getOfflinePlayers()) {
+            if (name.equalsIgnoreCase(offlinePlayer.getName())) {
+                return offlinePlayer;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ *  This file is part of CustomShop. Copyright (c) 2021 Paratopia.
+ *
+ *  CustomShop is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  CustomShop is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with CustomShop. If not, see <https://www.gnu.org/licenses/>.
+ *
+ */
+package com.paratopiamc.customshop.shop;
+
+import org.bukkit.event.inventory.ClickType;
+import org.bukkit.inventory.ItemStack;
+
+/**
+ * Amounts that customers can trade with a single click in a shop's GUI, without
+ * entering the amount in chat. Right-clicks still prompt for an amount.
+ */
+public enum QuickTrade {
+    /** Left-click trades a single item. */
+    ONE,
+    /** Shift-left-click trades a full stack of the item. */
+    STACK,
+    /**
+     * Shift-right-click trades as many items as possible. Middle-clicks are only
+     * sent by clients in creative mode, so they cannot be used.
+     */
+    ALL;
+
+    /**
+     * Returns the quick trade made with a click.
+     *
+     * @param click type of click in the GUI
+     * @return {@code null} if the click does not make a quick trade
+     */
+    public static QuickTrade of(ClickType click) {
+        switch (click) {
+        case LEFT:
+            return ONE;
+        case SHIFT_LEFT:
+            return STACK;
+        case SHIFT_RIGHT:
+            return ALL;
+        default:
+            return null;
+        }
+    }
+
+    /**
+     * Returns the amount of item traded. If nothing can be traded, a single item
+     * is, so that the usual checks of the trade tell the customer why it failed.
+     *
+     * @param item      item traded
+     * @param available amount of item that can be traded, e.g. that is in stock
+     *                  and fits in the customer's inventory
+     * @return amount of item to trade
+     */
+    public int getAmount(ItemStack item, int available) {
+        switch (this) {
+        case ONE:
+            return 1;
+        case STACK:
+            return item.getMaxStackSize();
+        default:
+            return Math.max(1, available);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ *  This file is part of CustomShop. Copyright (c) 2021 Paratopia.
+ *
+ *  CustomShop is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  CustomShop is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with CustomShop. If not, see <https://www.gnu.org/licenses/>.
+ *
+ */
+package com.paratopiamc.customshop.shop;
+
+import java.util.UUID;
+
+/**
+ * Entry of the {@link ShopRegistry}: where a shop is, what it is and who owns
+ * it. The location is the block holding the shop's armor stand.
+ */
+public class RegisteredShop {
+    private final UUID id;
+    private final UUID worldID;
+    private final int x;
+    private final int y;
+    private final int z;
+    private final ShopType type;
+    private final UUID ownerID;
+    private final boolean admin;
+    private final long createdAt;
+
+    public RegisteredShop(UUID id, UUID worldID, int x, int y, int z, ShopType type, UUID ownerID, boolean admin,
+            long createdAt) {
+        this.id = id;
+        this.worldID = worldID;
+        this.x = x;
+        this.y = y;
+        this.z = z;
+        this.type = type;
+        this.ownerID = ownerID;
+        this.admin = admin;
+        this.createdAt = createdAt;
+    }
+
+    public UUID getId() {
+        return this.id;
+    }
+
+    public UUID getWorldID() {
+        return this.worldID;
+    }
+
+    public int getX() {
+        return this.x;
+    }
+
+    public int getY() {
+        return this.y;
+    }
+
+    public int getZ() {
+        return this.z;
+    }
+
+    public ShopType getType() {
+        return this.type;
+    }
+
+    public UUID getOwnerID() {
+        return this.ownerID;
+    }
+
+    public boolean isAdmin() {
+        return this.admin;
+    }
+
+    public long getCreatedAt() {
+        return this.createdAt;
+    }
+}
@@ -92,7 +92,7 @@ public class SetShopCount extends CSComd {
                         if (canceller != null) {
                             player.sendMessage("§cOperation cancelled...");
                         }
-                        PlayerState.getPlayerState(player).clearShopInteractions();
+                        PlayerState.clearShopInteractions(player);
                     }
                 });
     }
@@ -114,9 +114,9 @@ public class SetShopCount extends CSComd {
                 switch (input) {
                 case "y":
                     try {
-                        CompletableFuture<Void> voidcf = CompletableFuture.runAsync(() -> CustomShop.getPlugin()
-                                .getDatabase().setShopsOwned(player.getUniqueId(), SetShopCount.this.newCount));
-                        voidcf.thenRun(() -> player
+                        CompletableFuture<Integer> cf = CustomShop.getPlugin().getPlayerData()
+                                .setShopsOwned(player.getUniqueId(), SetShopCount.this.newCount);
+                        cf.thenRun(() -> player
                                 .sendMessage("§aPlayer total shop count set to " + SetShopCount.this.newCount + "!"));
                     } catch (NumberFormatException e) {
                         player.sendMessage("§cInvalid number input!");
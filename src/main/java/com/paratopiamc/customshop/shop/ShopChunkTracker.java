@@ -0,0 +1,210 @@
+/*
+ *  This file is part of CustomShop. Copyright (c) 2021 Paratopia.
+ *
+ *  CustomShop is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  CustomShop is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with CustomShop. If not, see <https://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.paratopiamc.customshop.shop;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import com.paratopiamc.customshop.utils.LongObjectMap;
+import org.bukkit.Bukkit;
+import org.bukkit.Chunk;
+import org.bukkit.World;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.Listener;
+import org.bukkit.event.world.ChunkLoadEvent;
+import org.bukkit.event.world.ChunkUnloadEvent;
+import org.bukkit.event.world.EntitiesLoadEvent;
+import org.bukkit.event.world.EntitiesUnloadEvent;
+import org.bukkit.event.world.WorldUnloadEvent;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitRunnable;
+
+/**
+ * Keeps the {@link ShopIndex} in sync with the chunks loaded in each world.
+ * Chunks whose entities are loaded are queued, and queued chunks are scanned
+ * for shops on the following ticks, spending at most {@link #TICK_BUDGET} of
+ * each tick. Chunks that unload are dropped from the queue and from the index
+ * right away, which costs one lookup per chunk.
+ * <p>
+ * Entities are loaded separately from chunks since 1.17, which the events of
+ * {@link EntitiesListener} are only fired on. On older servers, entities are
+ * loaded and unloaded along with their chunk.
+ */
+public class ShopChunkTracker extends BukkitRunnable implements Listener {
+    /** Time spent scanning queued chunks per tick, in nanoseconds. */
+    private static final long TICK_BUDGET = TimeUnit.MILLISECONDS.toNanos(1);
+    /** Whether entities are loaded separately from chunks on this server. */
+    private static final boolean ENTITIES_EVENTS = hasClass("org.bukkit.event.world.EntitiesLoadEvent");
+
+    private final ShopIndex index;
+    private final Queue<Chunk> queue = new ArrayDeque<>();
+    /** Chunks in {@link #queue} by world and packed coordinates. */
+    private final Map<UUID, LongObjectMap<Chunk>> queued = new HashMap<>();
+
+    public ShopChunkTracker(ShopIndex index) {
+        this.index = index;
+    }
+
+    /**
+     * Returns whether the server loads entities separately from chunks, in which
+     * case the listener returned by {@link #entitiesListener()} should be
+     * registered as well.
+     *
+     * @return {@code true} on 1.17 and above
+     */
+    public static boolean hasEntitiesEvents() {
+        return ENTITIES_EVENTS;
+    }
+
+    /**
+     * Returns a listener of entities being loaded and unloaded. Only to be
+     * registered if {@link #hasEntitiesEvents()}, as its events do not exist on
+     * older servers.
+     *
+     * @return listener of entities events
+     */
+    public Listener entitiesListener() {
+        return new EntitiesListener();
+    }
+
+    /**
+     * Starts scanning queued chunks every tick, after queueing every chunk that is
+     * already loaded, as the plugin may be enabled after worlds are loaded.
+     *
+     * @param plugin plugin owning the task
+     */
+    public void start(Plugin plugin) {
+        for (World world : Bukkit.getWorlds()) {
+            for (Chunk chunk : world.getLoadedChunks()) {
+                enqueue(chunk);
+            }
+        }
+        runTaskTimer(plugin, 1, 1);
+    }
+
+    @Override
+    public void run() {
+        long deadline = System.nanoTime() + TICK_BUDGET;
+        index.flush(deadline);
+        while (!queue.isEmpty() && System.nanoTime() < deadline) {
+            Chunk chunk = queue.poll();
+            LongObjectMap<Chunk> worldQueued = queued.get(chunk.getWorld().getUID());
+            // Chunks unloaded since they were queued are no longer in the map.
+            if (worldQueued == null || worldQueued.remove(ShopIndex.packChunk(chunk.getX(), chunk.getZ())) == null) {
+                continue;
+            }
+            if (chunk.isLoaded() && isEntitiesLoaded(chunk)) {
+                index.addChunk(chunk);
+            }
+        }
+    }
+
+    /**
+     * Queues a chunk whose entities may have been loaded before it.
+     *
+     * @param evt event of chunk being loaded
+     */
+    @EventHandler
+    public void onChunkLoad(ChunkLoadEvent evt) {
+        if (isEntitiesLoaded(evt.getChunk())) {
+            enqueue(evt.getChunk());
+        }
+    }
+
+    /**
+     * Drops the shops of an unloaded chunk.
+     *
+     * @param evt event of chunk being unloaded
+     */
+    @EventHandler
+    public void onChunkUnload(ChunkUnloadEvent evt) {
+        drop(evt.getChunk());
+    }
+
+    /**
+     * Drops every shop of an unloaded world.
+     *
+     * @param evt event of world being unloaded
+     */
+    @EventHandler(ignoreCancelled = true)
+    public void onWorldUnload(WorldUnloadEvent evt) {
+        UUID worldID = evt.getWorld().getUID();
+        queued.remove(worldID);
+        queue.removeIf(chunk -> chunk.getWorld().getUID().equals(worldID));
+        index.removeWorld(evt.getWorld());
+    }
+
+    private void enqueue(Chunk chunk) {
+        LongObjectMap<Chunk> worldQueued = queued.computeIfAbsent(chunk.getWorld().getUID(),
+                k -> new LongObjectMap<>());
+        if (worldQueued.put(ShopIndex.packChunk(chunk.getX(), chunk.getZ()), chunk) == null) {
+            queue.add(chunk);
+        }
+    }
+
+    private void drop(Chunk chunk) {
+        LongObjectMap<Chunk> worldQueued = queued.get(chunk.getWorld().getUID());
+        if (worldQueued != null) {
+            worldQueued.remove(ShopIndex.packChunk(chunk.getX(), chunk.getZ()));
+        }
+        index.removeChunk(chunk);
+    }
+
+    private static boolean isEntitiesLoaded(Chunk chunk) {
+        return !ENTITIES_EVENTS || chunk.isEntitiesLoaded();
+    }
+
+    private static boolean hasClass(String name) {
+        try {
+            Class.forName(name);
+            return true;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Listener of the events of entities, kept apart from the tracker as
+     * registering a listener loads the classes of all of its events.
+     */
+    private class EntitiesListener implements Listener {
+        /**
+         * Queues a chunk whose entities were loaded.
+         *
+         * @param evt event of entities being loaded
+         */
+        @EventHandler
+        public void onEntitiesLoad(EntitiesLoadEvent evt) {
+            enqueue(evt.getChunk());
+        }
+
+        /**
+         * Drops the shops among entities unloaded with a chunk.
+         *
+         * @param evt event of entities being unloaded
+         */
+        @EventHandler
+        public void onEntitiesUnload(EntitiesUnloadEvent evt) {
+            drop(evt.getChunk());
+        }
+    }
+}
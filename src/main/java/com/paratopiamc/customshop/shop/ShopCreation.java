@@ -18,10 +18,12 @@
 
 package com.paratopiamc.customshop.shop;
 
+import java.util.List;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import com.paratopiamc.customshop.gui.CreationGUI;
+import com.paratopiamc.customshop.player.PlayerDataCache;
 import com.paratopiamc.customshop.player.PlayerState;
 import com.paratopiamc.customshop.plugin.CSComd;
 import com.paratopiamc.customshop.plugin.CustomShop;
@@ -74,11 +76,24 @@ public class ShopCreation extends CSComd implements Listener {
             player.sendMessage(LanguageUtils.getString("create.invalid-block"));
             return false;
         }
-        CompletableFuture.runAsync(() -> {
-            PlayerState state = PlayerState.getPlayerState(player);
-            state.clearShopInteractions();
-            state.createCreationGUI(this.isAdmin).openFirstPage();
-        }).whenComplete((result, throwable) -> Optional.ofNullable(throwable).ifPresent(e -> e.printStackTrace()));
+        CompletableFuture<List<Integer>> unlockedShops = this.isAdmin
+                || CustomShop.getPlugin().getConfig().getBoolean("unlock-all")
+                        ? CompletableFuture.completedFuture(null)
+                        : CustomShop.getPlugin().getPlayerData().getUnlockedShops(player);
+        // Only the lookup runs off the main thread, player states and GUIs are main
+        // thread only.
+        unlockedShops.thenAccept(unlocked -> new BukkitRunnable() {
+            @Override
+            public void run() {
+                if (!player.isOnline()) {
+                    return;
+                }
+                PlayerState state = PlayerState.getPlayerState(player);
+                state.clearShopInteractions();
+                state.createCreationGUI(isAdmin, unlocked).openFirstPage();
+            }
+        }.runTask(CustomShop.getPlugin()))
+                .whenComplete((result, throwable) -> Optional.ofNullable(throwable).ifPresent(e -> e.printStackTrace()));
         return false;
     }
 
@@ -95,8 +110,8 @@ public class ShopCreation extends CSComd implements Listener {
             return;
         }
         Player player = (Player) evt.getWhoClicked();
-        PlayerState state = PlayerState.getPlayerState(player);
-        CreationGUI gui = state.getCreationGUI();
+        PlayerState state = PlayerState.findPlayerState(player);
+        CreationGUI gui = state == null ? null : state.getCreationGUI();
 
         if (gui == null) {
             return;
@@ -121,33 +136,35 @@ public class ShopCreation extends CSComd implements Listener {
             } else if (evt.getSlot() < 27) {
                 Block targetBlock = player.getTargetBlockExact(5);
                 int maxShops = getMaxShops(player);
-                CompletableFuture<Integer> numbercf = CompletableFuture.supplyAsync(
-                        () -> CustomShop.getPlugin().getDatabase().getTotalShopOwned(player.getUniqueId()));
-                numbercf.thenAccept(number -> {
+                PlayerDataCache playerData = CustomShop.getPlugin().getPlayerData();
+                // Reserve a slot up front so that concurrent creations cannot both slip
+                // under the limit; the reservation is released if no shop is spawned.
+                CompletableFuture<Boolean> reservation = playerData.reserveShop(player.getUniqueId(), maxShops);
+                reservation.whenComplete((reserved, throwable) -> {
                     BukkitRunnable runnable = new BukkitRunnable() {
                         @Override
                         public void run() {
                             state.closeCreationGUI();
-                            if (number.intValue() >= maxShops) {
-                                player.sendMessage(LanguageUtils.getString("create.reached-max"));
+                            if (throwable != null) {
+                                throwable.printStackTrace();
                                 return;
                             }
-                            if (targetBlock == null) {
-                                player.sendMessage(LanguageUtils.getString("create.invalid-block"));
+                            if (!reserved) {
+                                player.sendMessage(LanguageUtils.getString("create.reached-max"));
                                 return;
                             }
-                            Location location = getCreationLocation(targetBlock, player);
-
-                            // Check for external plugins restrictions
-                            if (!CustomShop.getPlugin().support().hasCreatePerms(location, player)) {
-                                player.sendMessage(LanguageUtils.getString("create.no-perms"));
-                                return;
+                            boolean created = false;
+                            try {
+                                created = tryCreateShop(player, targetBlock, item);
+                            } finally {
+                                if (!created) {
+                                    playerData.decrementTotalShopsOwned(player.getUniqueId());
+                                }
                             }
-
-                            ShopCreator creator = getShopCreator(item);
-                            creator.createShop(location, player, item, isAdmin);
                         }
                     };
+                    // Deferred even if the reservation is already complete, so that the shop
+                    // is never spawned and the GUI never closed within the click event.
                     runnable.runTask(CustomShop.getPlugin());
                 });
             }
@@ -155,6 +172,32 @@ public class ShopCreation extends CSComd implements Listener {
         }
     }
 
+    /**
+     * Attempts to spawn the selected shop once a slot has been reserved for the
+     * player.
+     *
+     * @param player      player creating the shop
+     * @param targetBlock block that the player is targeting
+     * @param item        selected shop design
+     * @return {@code true} if the shop was spawned
+     */
+    private boolean tryCreateShop(Player player, Block targetBlock, ItemStack item) {
+        if (targetBlock == null) {
+            player.sendMessage(LanguageUtils.getString("create.invalid-block"));
+            return false;
+        }
+        Location location = getCreationLocation(targetBlock, player);
+
+        // Check for external plugins restrictions
+        if (!CustomShop.getPlugin().support().hasCreatePerms(location, player)) {
+            player.sendMessage(LanguageUtils.getString("create.no-perms"));
+            return false;
+        }
+
+        ShopCreator creator = getShopCreator(item);
+        return creator.createShop(location, player, item, isAdmin);
+    }
+
     /**
      * Returns location where the shop will attempt to spawn at. The returned
      * location faces the player.
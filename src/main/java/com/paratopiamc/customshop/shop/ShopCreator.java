@@ -18,6 +18,8 @@
 
 package com.paratopiamc.customshop.shop;
 
+import com.paratopiamc.customshop.plugin.CustomShop;
+import com.paratopiamc.customshop.utils.ShopTags;
 import org.bukkit.Location;
 import org.bukkit.entity.ArmorStand;
 import org.bukkit.entity.Player;
@@ -31,14 +33,32 @@ public abstract class ShopCreator {
     /**
      * The main method where the creator creates the shop with its own requirements
      * and specifications. A message is returned as a feedback to player on whether
-     * the shop is created successfully.
+     * the shop is created successfully. The shop count of the owner is reserved by
+     * the caller beforehand and released if the shop is not created.
      *
      * @param location location in which the shop will attempt on top of
      * @param owner    owner of the shop
      * @param item     design of the shop
      * @param isAdmin  whether the shop is an admin shop
+     * @return {@code true} if the shop was spawned
      */
-    public abstract void createShop(Location location, Player owner, ItemStack item, boolean isAdmin);
+    public abstract boolean createShop(Location location, Player owner, ItemStack item, boolean isAdmin);
+
+    /**
+     * Tags the armor stand of a newly spawned shop, then records the shop in the
+     * {@link ShopRegistry} and the {@link ShopIndex}.
+     *
+     * @param armorStand armor stand of the shop
+     * @param type       type of the shop
+     * @param owner      owner of the shop
+     * @param isAdmin    whether the shop is an admin shop
+     */
+    protected void registerShop(ArmorStand armorStand, ShopType type, Player owner, boolean isAdmin) {
+        ShopTags.tag(armorStand, type, owner.getUniqueId(), isAdmin);
+        CustomShop plugin = CustomShop.getPlugin();
+        plugin.getShopRegistry().register(armorStand, type, owner.getUniqueId(), isAdmin);
+        plugin.getShopIndex().add(armorStand);
+    }
 
     /**
      * Locks armor stand to prevent accessibility of items within its slots.
@@ -36,7 +36,7 @@ public class ShopExit implements Listener {
     @EventHandler
     public void closeShop(InventoryCloseEvent evt) {
         if (!((Player) evt.getPlayer()).isConversing()) {
-            PlayerState.getPlayerState((Player) evt.getPlayer()).clearShopInteractions();
+            PlayerState.clearShopInteractions((Player) evt.getPlayer());
         }
     }
 }
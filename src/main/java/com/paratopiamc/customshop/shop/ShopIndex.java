@@ -0,0 +1,282 @@
+/*
+ *  This file is part of CustomShop. Copyright (c) 2021 Paratopia.
+ *
+ *  CustomShop is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  CustomShop is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with CustomShop. If not, see <https://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.paratopiamc.customshop.shop;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import com.paratopiamc.customshop.utils.LongObjectMap;
+import com.paratopiamc.customshop.utils.ShopTags;
+import org.bukkit.Chunk;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.entity.ArmorStand;
+import org.bukkit.entity.Entity;
+
+/**
+ * Spatial index of the records of loaded custom shops, keyed by every block
+ * that each shop takes up. Blocks are packed into a single {@code long} per
+ * world, so that finding the shop in a block is one hash lookup instead of an
+ * entity query. Shops are also grouped by chunk, so that a chunk is dropped
+ * from the index without looking at its entities. The index is kept up to date
+ * by shop creators, shop removers and the {@link ShopChunkTracker}, which also
+ * writes changed records back to their armor stands, see {@link ShopRecord}.
+ * Accessed from the main thread only.
+ */
+public class ShopIndex {
+    private final Map<UUID, LongObjectMap<ShopRecord>> blocks = new HashMap<>();
+    private final Map<UUID, LongObjectMap<List<ShopRecord>>> chunks = new HashMap<>();
+    private final Map<UUID, ShopRecord> records = new HashMap<>();
+    private final ArrayDeque<ShopRecord> dirty = new ArrayDeque<>();
+
+    /**
+     * Packs block coordinates into a single {@code long}: 26 bits each for
+     * {@code x} and {@code z}, and 12 bits for {@code y}.
+     *
+     * @param x x coordinate of block
+     * @param y y coordinate of block
+     * @param z z coordinate of block
+     * @return packed coordinates
+     */
+    public static long pack(int x, int y, int z) {
+        return ((long) (x & 0x3FFFFFF) << 38) | ((long) (z & 0x3FFFFFF) << 12) | (y & 0xFFF);
+    }
+
+    /**
+     * Packs chunk coordinates into a single {@code long}.
+     *
+     * @param chunkX x coordinate of chunk
+     * @param chunkZ z coordinate of chunk
+     * @return packed coordinates
+     */
+    public static long packChunk(int chunkX, int chunkZ) {
+        return ((long) chunkX << 32) | (chunkZ & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Returns the armor stand of the shop taking up the block.
+     *
+     * @param block block of interest
+     * @return {@code null} if no loaded shop takes up the block
+     */
+    public ArmorStand get(Block block) {
+        ShopRecord record = getRecord(block);
+        return record == null ? null : record.getArmorStand();
+    }
+
+    /**
+     * Returns the record of the shop taking up the block.
+     *
+     * @param block block of interest
+     * @return {@code null} if no loaded shop takes up the block
+     */
+    public ShopRecord getRecord(Block block) {
+        LongObjectMap<ShopRecord> worldBlocks = blocks.get(block.getWorld().getUID());
+        if (worldBlocks == null) {
+            return null;
+        }
+        ShopRecord record = worldBlocks.get(pack(block.getX(), block.getY(), block.getZ()));
+        if (record != null && !record.getArmorStand().isValid()) {
+            // Removed without going through a shop remover, e.g. killed by command.
+            remove(record.getArmorStand());
+            return null;
+        }
+        return record;
+    }
+
+    /**
+     * Returns the record of the shop represented by the armor stand, adding the
+     * armor stand to the index if it is not indexed yet.
+     *
+     * @param armorStand armor stand of interest
+     * @return {@code null} if the armor stand is not a custom shop
+     */
+    public ShopRecord getRecord(ArmorStand armorStand) {
+        ShopRecord record = records.get(armorStand.getUniqueId());
+        return record != null ? record : add(armorStand);
+    }
+
+    /**
+     * Adds the armor stand to the index if it belongs to a custom shop. Does
+     * nothing if it is already indexed. Armor stands of shops created by older
+     * versions of the plugin are tagged on the way, see {@link ShopTags}.
+     *
+     * @param armorStand armor stand of interest
+     * @return record of the shop, {@code null} if the armor stand is not a custom
+     *         shop
+     */
+    public ShopRecord add(ArmorStand armorStand) {
+        ShopRecord record = records.get(armorStand.getUniqueId());
+        if (record != null) {
+            return record;
+        }
+        record = ShopRecord.load(armorStand);
+        if (record == null) {
+            return null;
+        }
+        records.put(armorStand.getUniqueId(), record);
+        Location location = armorStand.getLocation();
+        UUID worldID = location.getWorld().getUID();
+        LongObjectMap<ShopRecord> worldBlocks = blocks.computeIfAbsent(worldID, k -> new LongObjectMap<>());
+        for (int i = 0; i < record.getType().getHeight(); i++) {
+            worldBlocks.put(pack(location.getBlockX(), location.getBlockY() + i, location.getBlockZ()), record);
+        }
+        LongObjectMap<List<ShopRecord>> worldChunks = chunks.computeIfAbsent(worldID, k -> new LongObjectMap<>());
+        long chunkKey = packChunk(location.getBlockX() >> 4, location.getBlockZ() >> 4);
+        List<ShopRecord> shops = worldChunks.get(chunkKey);
+        if (shops == null) {
+            shops = new ArrayList<>(2);
+            worldChunks.put(chunkKey, shops);
+        }
+        shops.add(record);
+        return record;
+    }
+
+    /**
+     * Removes the armor stand from the index, writing back its record first.
+     * Blocks since taken up by another shop are left alone.
+     *
+     * @param armorStand armor stand of interest
+     */
+    public void remove(ArmorStand armorStand) {
+        ShopRecord record = records.remove(armorStand.getUniqueId());
+        if (record == null) {
+            return;
+        }
+        record.flush();
+        Location location = armorStand.getLocation();
+        UUID worldID = location.getWorld().getUID();
+        removeBlocks(worldID, record);
+        LongObjectMap<List<ShopRecord>> worldChunks = chunks.get(worldID);
+        if (worldChunks == null) {
+            return;
+        }
+        long chunkKey = packChunk(location.getBlockX() >> 4, location.getBlockZ() >> 4);
+        List<ShopRecord> shops = worldChunks.get(chunkKey);
+        if (shops != null) {
+            shops.remove(record);
+            if (shops.isEmpty()) {
+                worldChunks.remove(chunkKey);
+            }
+        }
+    }
+
+    /**
+     * Indexes every shop among the entities of a chunk. The chunk's entities must
+     * be loaded.
+     *
+     * @param chunk chunk of interest
+     */
+    public void addChunk(Chunk chunk) {
+        for (Entity entity : chunk.getEntities()) {
+            if (entity instanceof ArmorStand) {
+                add((ArmorStand) entity);
+            }
+        }
+    }
+
+    /**
+     * Drops every shop of a chunk from the index, writing back their records
+     * first.
+     *
+     * @param chunk chunk of interest
+     */
+    public void removeChunk(Chunk chunk) {
+        UUID worldID = chunk.getWorld().getUID();
+        LongObjectMap<List<ShopRecord>> worldChunks = chunks.get(worldID);
+        if (worldChunks == null) {
+            return;
+        }
+        List<ShopRecord> shops = worldChunks.remove(packChunk(chunk.getX(), chunk.getZ()));
+        if (shops != null) {
+            for (ShopRecord record : shops) {
+                record.flush();
+                records.remove(record.getArmorStand().getUniqueId());
+                removeBlocks(worldID, record);
+            }
+        }
+    }
+
+    /**
+     * Drops every shop of the world, writing back their records first.
+     *
+     * @param world world that was unloaded
+     */
+    public void removeWorld(World world) {
+        blocks.remove(world.getUID());
+        LongObjectMap<List<ShopRecord>> worldChunks = chunks.remove(world.getUID());
+        if (worldChunks == null) {
+            return;
+        }
+        records.values().removeIf(record -> {
+            if (record.getArmorStand().getWorld().getUID().equals(world.getUID())) {
+                record.flush();
+                return true;
+            }
+            return false;
+        });
+    }
+
+    /**
+     * Queues a changed record to be written back to its armor stand.
+     *
+     * @param record record that changed
+     */
+    void queueFlush(ShopRecord record) {
+        dirty.add(record);
+    }
+
+    /**
+     * Writes queued records back to their armor stands until the deadline.
+     *
+     * @param deadline value of {@link System#nanoTime()} to stop at
+     */
+    public void flush(long deadline) {
+        while (!dirty.isEmpty() && System.nanoTime() < deadline) {
+            dirty.poll().flush();
+        }
+    }
+
+    /**
+     * Writes every queued record back to its armor stand.
+     */
+    public void flushAll() {
+        while (!dirty.isEmpty()) {
+            dirty.poll().flush();
+        }
+    }
+
+    private void removeBlocks(UUID worldID, ShopRecord record) {
+        LongObjectMap<ShopRecord> worldBlocks = blocks.get(worldID);
+        if (worldBlocks == null) {
+            return;
+        }
+        Location location = record.getArmorStand().getLocation();
+        for (int i = 0; i < record.getType().getHeight(); i++) {
+            long key = pack(location.getBlockX(), location.getBlockY() + i, location.getBlockZ());
+            if (worldBlocks.get(key) == record) {
+                worldBlocks.remove(key);
+            }
+        }
+    }
+}
@@ -23,7 +23,10 @@ import com.paratopiamc.customshop.gui.BriefcaseGUI;
 import com.paratopiamc.customshop.gui.ShopGUI;
 import com.paratopiamc.customshop.gui.VMGUI;
 import com.paratopiamc.customshop.player.PlayerState;
+import com.paratopiamc.customshop.plugin.CustomShop;
+import com.paratopiamc.customshop.shop.vm.VMRecord;
 import com.paratopiamc.customshop.utils.LanguageUtils;
+import com.paratopiamc.customshop.utils.ShopTags;
 import com.paratopiamc.customshop.utils.ShopUtils;
 import org.bukkit.block.Block;
 import org.bukkit.entity.ArmorStand;
@@ -60,14 +63,15 @@ public class ShopOpening implements Listener {
             evt.setCancelled(true);
             ShopGUI gui = getShopOpener(armorStand, player);
             if (gui != null) {
+                // Shops created before the registry existed are registered when first used.
+                CustomShop.getPlugin().getShopRegistry().backfill(armorStand);
                 PlayerState state = PlayerState.getPlayerState(player);
                 state.clearShopInteractions();
-                if (PlayerState.getInteractingPlayer(armorStand) != null) {
+                if (!state.setShopGUI(gui)) {
                     player.sendMessage(LanguageUtils.getString("shop-currently-in-use.shop"));
                     return;
                 } else {
                     gui.openUI();
-                    state.setShopGUI(gui);
                 }
             }
         }
@@ -84,13 +88,20 @@ public class ShopOpening implements Listener {
      * @return correspond gui for the type of shop
      */
     private static ShopGUI getShopOpener(ArmorStand armorStand, Player player) {
-        String customName = armorStand.getCustomName();
+        ShopType type = ShopTags.getType(armorStand);
+        if (type == null) {
+            return null;
+        }
         Optional<ShopGUI> result;
-        switch (customName) {
-        case "§5§lVending Machine":
+        switch (type) {
+        case VENDING_MACHINE:
+            if (VMRecord.isUnreadable(armorStand)) {
+                player.sendMessage(LanguageUtils.getString("shop-unreadable"));
+                return null;
+            }
             result = Optional.ofNullable(new VMGUI(armorStand, player));
             break;
-        case "§5§lNewt's Briefcase":
+        case BRIEFCASE:
             result = Optional.ofNullable(new BriefcaseGUI(armorStand, player));
             break;
         default:
@@ -0,0 +1,119 @@
+/*
+ *  This file is part of CustomShop. Copyright (c) 2021 Paratopia.
+ *
+ *  CustomShop is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  CustomShop is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with CustomShop. If not, see <https://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.paratopiamc.customshop.shop;
+
+import java.util.UUID;
+import com.paratopiamc.customshop.plugin.CustomShop;
+import com.paratopiamc.customshop.shop.briefcase.BriefcaseRecord;
+import com.paratopiamc.customshop.shop.vm.VMRecord;
+import com.paratopiamc.customshop.utils.ShopTags;
+import org.bukkit.entity.ArmorStand;
+
+/**
+ * In-memory state of a loaded custom shop, read from its armor stand once when
+ * the shop is indexed. Shop GUIs read and change the record instead of the
+ * armor stand's equipment; changes are written back to the armor stand later
+ * by the {@link ShopIndex}, at most once per tick and always before the shop is
+ * unloaded. Each type of custom shop has a record of its own type that extends
+ * this abstract class.
+ * <p>
+ * Records are only read and changed on the main thread, including by trades
+ * whose payment completes asynchronously, so validating and changing the stock
+ * of a shop in the same tick is never interleaved with another trade.
+ */
+public abstract class ShopRecord {
+    protected final ArmorStand armorStand;
+    private final ShopType type;
+    private final UUID ownerID;
+    private final boolean admin;
+    private boolean dirty;
+
+    protected ShopRecord(ArmorStand armorStand, ShopType type) {
+        this.armorStand = armorStand;
+        this.type = type;
+        this.ownerID = ShopTags.getOwnerID(armorStand);
+        this.admin = ShopTags.isAdmin(armorStand);
+    }
+
+    /**
+     * Reads the record of the shop represented by the armor stand.
+     *
+     * @param armorStand armor stand of interest
+     * @return {@code null} if the armor stand is not a custom shop
+     */
+    static ShopRecord load(ArmorStand armorStand) {
+        ShopType type = ShopTags.getType(armorStand);
+        if (type == null) {
+            return null;
+        }
+        switch (type) {
+        case VENDING_MACHINE:
+            return new VMRecord(armorStand);
+        case BRIEFCASE:
+            return new BriefcaseRecord(armorStand);
+        default:
+            return null;
+        }
+    }
+
+    public ArmorStand getArmorStand() {
+        return this.armorStand;
+    }
+
+    public ShopType getType() {
+        return this.type;
+    }
+
+    public UUID getOwnerID() {
+        return this.ownerID;
+    }
+
+    public boolean isAdmin() {
+        return this.admin;
+    }
+
+    /**
+     * Marks the record as changed, to be written back to the armor stand. Called
+     * by subclasses whenever their state changes.
+     */
+    protected void markDirty() {
+        if (!this.dirty) {
+            this.dirty = true;
+            CustomShop.getPlugin().getShopIndex().queueFlush(this);
+        }
+    }
+
+    /**
+     * Writes the record back to the armor stand if it changed since it was last
+     * written. Does nothing once the armor stand is removed.
+     */
+    public void flush() {
+        if (this.dirty) {
+            this.dirty = false;
+            if (this.armorStand.isValid()) {
+                write();
+            }
+        }
+    }
+
+    /**
+     * Writes every field of the record to the armor stand's equipment.
+     */
+    protected abstract void write();
+}
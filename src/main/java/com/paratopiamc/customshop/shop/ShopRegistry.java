@@ -0,0 +1,167 @@
+/*
+ *  This file is part of CustomShop. Copyright (c) 2021 Paratopia.
+ *
+ *  CustomShop is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  CustomShop is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with CustomShop. If not, see <https://www.gnu.org/licenses/>.
+ *
+ */
+package com.paratopiamc.customshop.shop;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import com.paratopiamc.customshop.database.Database;
+import com.paratopiamc.customshop.utils.ShopTags;
+import org.bukkit.Location;
+import org.bukkit.entity.ArmorStand;
+
+/**
+ * In-memory index of every custom shop, backed by the {@code shops} table. The
+ * table is loaded once on startup; afterwards the registry is the source of
+ * truth and every change is written through to the database. Shops created
+ * before the registry existed are added as they are found in game.
+ */
+public class ShopRegistry {
+    private final Database database;
+    private final Map<String, RegisteredShop> byLocation = new ConcurrentHashMap<>();
+    private final Map<UUID, Set<RegisteredShop>> byOwner = new ConcurrentHashMap<>();
+
+    public ShopRegistry(Database database) {
+        this.database = database;
+    }
+
+    /**
+     * Loads every shop from the database. Called once in plugin's
+     * {@code onEnable()}.
+     */
+    public void load() {
+        byLocation.clear();
+        byOwner.clear();
+        database.loadShops().forEach(this::index);
+    }
+
+    /**
+     * Registers a newly created shop.
+     *
+     * @param armorStand armor stand of the shop
+     * @param type       type of the shop
+     * @param ownerID    UUID of the owner
+     * @param admin      whether the shop is an admin shop
+     * @return registered shop
+     */
+    public RegisteredShop register(ArmorStand armorStand, ShopType type, UUID ownerID, boolean admin) {
+        Location location = armorStand.getLocation();
+        RegisteredShop shop = new RegisteredShop(UUID.randomUUID(), location.getWorld().getUID(),
+                location.getBlockX(), location.getBlockY(), location.getBlockZ(), type, ownerID, admin,
+                System.currentTimeMillis());
+        RegisteredShop previous = byLocation.get(key(shop.getWorldID(), shop.getX(), shop.getY(), shop.getZ()));
+        if (previous != null) {
+            unindex(previous);
+        }
+        index(shop);
+        database.saveShop(shop);
+        return shop;
+    }
+
+    /**
+     * Registers an existing shop that is not in the registry yet, i.e. one that
+     * was created by an older version of the plugin. Does nothing if the shop is
+     * already registered.
+     *
+     * @param armorStand armor stand of the shop
+     * @return registered shop, {@code null} if the armor stand is not a valid shop
+     */
+    public RegisteredShop backfill(ArmorStand armorStand) {
+        RegisteredShop shop = get(armorStand.getLocation());
+        if (shop != null) {
+            return shop;
+        }
+        ShopType type = ShopTags.getType(armorStand);
+        if (type == null) {
+            return null;
+        }
+        return register(armorStand, type, ShopTags.getOwnerID(armorStand), ShopTags.isAdmin(armorStand));
+    }
+
+    /**
+     * Removes the shop at the given location from the registry.
+     *
+     * @param location location of the shop's armor stand
+     * @return removed shop, {@code null} if no shop was registered there
+     */
+    public RegisteredShop unregister(Location location) {
+        RegisteredShop shop = get(location);
+        if (shop != null) {
+            unindex(shop);
+            database.deleteShop(shop.getId());
+        }
+        return shop;
+    }
+
+    /**
+     * Returns the shop whose armor stand is in the block at the given location.
+     *
+     * @param location location of interest
+     * @return {@code null} if no shop is registered there
+     */
+    public RegisteredShop get(Location location) {
+        return byLocation.get(
+                key(location.getWorld().getUID(), location.getBlockX(), location.getBlockY(), location.getBlockZ()));
+    }
+
+    /**
+     * Returns every registered shop of the player.
+     *
+     * @param ownerID UUID of player of interest
+     * @return list of shops owned by the player
+     */
+    public List<RegisteredShop> getShops(UUID ownerID) {
+        Set<RegisteredShop> shops = byOwner.get(ownerID);
+        return shops == null ? Collections.emptyList() : new ArrayList<>(shops);
+    }
+
+    /**
+     * Returns the number of registered shops of the player.
+     *
+     * @param ownerID UUID of player of interest
+     * @return number of shops owned by the player
+     */
+    public int count(UUID ownerID) {
+        Set<RegisteredShop> shops = byOwner.get(ownerID);
+        return shops == null ? 0 : shops.size();
+    }
+
+    private void index(RegisteredShop shop) {
+        byLocation.put(key(shop.getWorldID(), shop.getX(), shop.getY(), shop.getZ()), shop);
+        byOwner.computeIfAbsent(shop.getOwnerID(), k -> ConcurrentHashMap.newKeySet()).add(shop);
+    }
+
+    private void unindex(RegisteredShop shop) {
+        byLocation.remove(key(shop.getWorldID(), shop.getX(), shop.getY(), shop.getZ()));
+        Set<RegisteredShop> shops = byOwner.get(shop.getOwnerID());
+        if (shops != null) {
+            shops.remove(shop);
+            if (shops.isEmpty()) {
+                byOwner.remove(shop.getOwnerID());
+            }
+        }
+    }
+
+    private static String key(UUID worldID, int x, int y, int z) {
+        return worldID + ":" + x + ":" + y + ":" + z;
+    }
+}
@@ -19,13 +19,13 @@
 package com.paratopiamc.customshop.shop;
 
 import java.util.UUID;
-import java.util.concurrent.CompletableFuture;
 import com.paratopiamc.customshop.player.PlayerState;
 import com.paratopiamc.customshop.plugin.CSComd;
 import com.paratopiamc.customshop.plugin.CustomShop;
 import com.paratopiamc.customshop.shop.briefcase.BriefcaseRemover;
 import com.paratopiamc.customshop.shop.vm.VMRemover;
 import com.paratopiamc.customshop.utils.LanguageUtils;
+import com.paratopiamc.customshop.utils.ShopTags;
 import com.paratopiamc.customshop.utils.ShopUtils;
 import org.bukkit.GameMode;
 import org.bukkit.Sound;
@@ -71,13 +71,12 @@ public class ShopRemoval extends CSComd implements Listener {
                 @Override
                 public void run() {
                     if (!evt.isCancelled()) {
-                        PlayerState.getPlayerState(player).clearShopInteractions();
+                        PlayerState.clearShopInteractions(player);
                         UUID ownerID = remover.removeShop(true);
                         if (ownerID != null) {
                             targetBlock.getWorld().playSound(targetBlock.getLocation(), Sound.BLOCK_STONE_BREAK, 1.5F,
                                     1.0F);
-                            CompletableFuture.runAsync(
-                                    () -> CustomShop.getPlugin().getDatabase().decrementTotalShopsOwned(ownerID));
+                            CustomShop.getPlugin().getPlayerData().decrementTotalShopsOwned(ownerID);
                         }
                     }
                 }
@@ -109,11 +108,10 @@ public class ShopRemoval extends CSComd implements Listener {
                 evt.setCancelled(true);
                 return;
             }
-            PlayerState.getPlayerState(player).clearShopInteractions();
+            PlayerState.clearShopInteractions(player);
             UUID ownerID = remover.removeShop(true);
             if (ownerID != null) {
-                CompletableFuture
-                        .runAsync(() -> CustomShop.getPlugin().getDatabase().decrementTotalShopsOwned(ownerID));
+                CustomShop.getPlugin().getPlayerData().decrementTotalShopsOwned(ownerID);
             } else {
                 evt.setCancelled(true);
             }
@@ -142,8 +140,7 @@ public class ShopRemoval extends CSComd implements Listener {
         if (remover != null) {
             UUID ownerID = remover.removeShop(false);
             if (ownerID != null) {
-                CompletableFuture
-                        .runAsync(() -> CustomShop.getPlugin().getDatabase().decrementTotalShopsOwned(ownerID));
+                CustomShop.getPlugin().getPlayerData().decrementTotalShopsOwned(ownerID);
             }
         } else {
             player.sendMessage(LanguageUtils.getString("invalid-target"));
@@ -179,13 +176,21 @@ public class ShopRemoval extends CSComd implements Listener {
                 || !CustomShop.getPlugin().support().hasRemovePerms(armorStand.getLocation(), player))
             return null;
 
-        String customName = armorStand.getCustomName();
+        ShopType type = ShopTags.getType(armorStand);
+        if (type == null) {
+            return null;
+        }
+        // Removers read the armor stand's equipment, so pending changes are written first.
+        ShopRecord record = CustomShop.getPlugin().getShopIndex().getRecord(armorStand);
+        if (record != null) {
+            record.flush();
+        }
         ShopRemover result;
-        switch (customName) {
-        case "§5§lVending Machine":
-            result = new VMRemover(targetBlock, armorStand);
+        switch (type) {
+        case VENDING_MACHINE:
+            result = new VMRemover(targetBlock, armorStand, player);
             break;
-        case "§5§lNewt's Briefcase":
+        case BRIEFCASE:
             result = new BriefcaseRemover(targetBlock, armorStand);
             break;
         default:
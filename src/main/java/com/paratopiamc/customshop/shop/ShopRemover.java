@@ -19,6 +19,7 @@
 package com.paratopiamc.customshop.shop;
 
 import java.util.UUID;
+import com.paratopiamc.customshop.plugin.CustomShop;
 import org.bukkit.block.Block;
 import org.bukkit.entity.ArmorStand;
 
@@ -47,4 +48,14 @@ public abstract class ShopRemover {
      *         reasons
      */
     public abstract UUID removeShop(boolean dropItems);
+
+    /**
+     * Removes the shop from the {@link ShopRegistry} and the {@link ShopIndex}.
+     * Called by subclasses once the shop is removed from the world.
+     */
+    protected void unregisterShop() {
+        CustomShop plugin = CustomShop.getPlugin();
+        plugin.getShopRegistry().unregister(armorStand.getLocation());
+        plugin.getShopIndex().remove(armorStand);
+    }
 }
@@ -0,0 +1,96 @@
+/*
+ *  This file is part of CustomShop. Copyright (c) 2021 Paratopia.
+ *
+ *  CustomShop is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  CustomShop is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with CustomShop. If not, see <https://www.gnu.org/licenses/>.
+ *
+ */
+package com.paratopiamc.customshop.shop;
+
+/**
+ * Types of custom shops. Armor stands of shops are tagged with the id of their
+ * type; those of shops created by older versions of the plugin are identified
+ * by their custom name instead.
+ */
+public enum ShopType {
+    VENDING_MACHINE((byte) 1, "§5§lVending Machine", 2), BRIEFCASE((byte) 2, "§5§lNewt's Briefcase", 1);
+
+    private final byte id;
+    private final String customName;
+    private final int height;
+
+    ShopType(byte id, String customName, int height) {
+        this.id = id;
+        this.customName = customName;
+        this.height = height;
+    }
+
+    /**
+     * Returns the id under which this type of shop is tagged on its armor stand.
+     * Ids must never change once released.
+     *
+     * @return id of shop type
+     */
+    public byte getId() {
+        return this.id;
+    }
+
+    /**
+     * Returns the custom name given to the armor stand of this type of shop.
+     *
+     * @return custom name of armor stand
+     */
+    public String getCustomName() {
+        return this.customName;
+    }
+
+    /**
+     * Returns the number of barrier blocks taken up by this type of shop, starting
+     * from the block of its armor stand upwards.
+     *
+     * @return height of shop in blocks
+     */
+    public int getHeight() {
+        return this.height;
+    }
+
+    /**
+     * Returns the type of shop with the given id.
+     *
+     * @param id id of shop type
+     * @return {@code null} if no type of shop matches
+     */
+    public static ShopType fromId(byte id) {
+        for (ShopType type : values()) {
+            if (type.id == id) {
+                return type;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the type of shop whose armor stand has the given custom name.
+     *
+     * @param customName custom name of armor stand, may be {@code null}
+     * @return {@code null} if no type of shop matches
+     */
+    public static ShopType fromCustomName(String customName) {
+        for (ShopType type : values()) {
+            if (type.customName.equals(customName)) {
+                return type;
+            }
+        }
+        return null;
+    }
+}
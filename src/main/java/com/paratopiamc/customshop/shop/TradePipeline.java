@@ -0,0 +1,341 @@
+/*
+ *  This file is part of CustomShop. Copyright (c) 2021 Paratopia.
+ *
+ *  CustomShop is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  CustomShop is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with CustomShop. If not, see <https://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.paratopiamc.customshop.shop;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.BiConsumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import com.paratopiamc.customshop.database.Database;
+import com.paratopiamc.customshop.plugin.IOExecutor;
+import org.bukkit.Bukkit;
+import org.bukkit.OfflinePlayer;
+import org.bukkit.plugin.Plugin;
+import net.milkbowl.vault.economy.Economy;
+import net.milkbowl.vault.economy.EconomyResponse;
+
+/**
+ * Runs the money side of shop trades off the main thread. Shop GUIs reserve the
+ * stock of a trade on the main thread and submit its payment here; the economy
+ * calls are made on a single thread of their own, and the outcome is handed back
+ * to the main thread in a later tick, where the GUI either completes the item
+ * transfer or puts the reserved stock back.
+ * <p>
+ * Every payment is journaled before any money moves: the trade is committed to
+ * the journal as {@link State#PENDING} and the payment only starts once the
+ * commit succeeded. Later changes, i.e. the trade being paid and then settled,
+ * go through the database's write-behind queue, so a trade costs a single
+ * commit of its own. Trades are moved back to {@code PENDING}, again waiting for
+ * the commit, before money is moved back. A journaled trade that is
+ * {@code PENDING} may thus have been partly paid, but a {@code PAID} one was
+ * fully paid and never partly refunded. Trades left in the journal by a crash
+ * are settled by {@link #reconcile()} on the next startup.
+ */
+public class TradePipeline {
+    /**
+     * Outcome of the payment of a trade.
+     */
+    public enum Result {
+        /** Payer was charged and payee was paid. */
+        SUCCESS,
+        /** Payer cannot afford the trade. No money changed hands. */
+        INSUFFICIENT_FUNDS,
+        /**
+         * Economy or journal failed. Money that moved was given back, unless the
+         * economy failed mid-leg, in which case the trade is left in the journal.
+         */
+        FAILED
+    }
+
+    /**
+     * Progress of the payment of a trade, as recorded in the journal.
+     */
+    public enum State {
+        /** Money may have moved for some, but not all, legs of the trade. */
+        PENDING,
+        /** Payer has been charged and payee has been paid. */
+        PAID
+    }
+
+    /**
+     * Payment of a single trade. The payer or payee is {@code null} for the
+     * admin side of a trade at an admin shop, whose money is not tracked.
+     */
+    public static class Trade {
+        private final UUID id;
+        private final UUID shopID;
+        private final UUID payer;
+        private final UUID payee;
+        private final double total;
+        private final long createdAt;
+        private volatile State state;
+
+        public Trade(UUID id, UUID shopID, UUID payer, UUID payee, double total, State state, long createdAt) {
+            this.id = id;
+            this.shopID = shopID;
+            this.payer = payer;
+            this.payee = payee;
+            this.total = total;
+            this.state = state;
+            this.createdAt = createdAt;
+        }
+
+        public UUID getId() {
+            return this.id;
+        }
+
+        public UUID getShopID() {
+            return this.shopID;
+        }
+
+        public UUID getPayer() {
+            return this.payer;
+        }
+
+        public UUID getPayee() {
+            return this.payee;
+        }
+
+        public double getTotal() {
+            return this.total;
+        }
+
+        public State getState() {
+            return this.state;
+        }
+
+        public long getCreatedAt() {
+            return this.createdAt;
+        }
+
+        @Override
+        public String toString() {
+            return "trade " + id + " of " + total + " from " + (payer == null ? "admin" : payer) + " to "
+                    + (payee == null ? "admin" : payee) + " at shop " + shopID + " (" + state + ")";
+        }
+    }
+
+    private final Plugin plugin;
+    private final Economy economy;
+    private final Database database;
+    private final Logger logger;
+    private final IOExecutor executor;
+    /** Outcomes waiting to be handed to the main thread. */
+    private final Queue<Runnable> completions = new ConcurrentLinkedQueue<>();
+    private volatile boolean shutdown;
+
+    /**
+     * Constructor for the pipeline.
+     *
+     * @param plugin    plugin that schedules the main thread tasks
+     * @param economy   economy that trades are paid with
+     * @param database  database holding the journal
+     * @param queueSize maximum number of payments waiting to be made
+     */
+    public TradePipeline(Plugin plugin, Economy economy, Database database, int queueSize) {
+        this.plugin = plugin;
+        this.economy = economy;
+        this.database = database;
+        this.logger = plugin.getLogger();
+        // Economy plugins are rarely thread-safe, so payments are made one at a time.
+        this.executor = new IOExecutor("Economy", 1, queueSize, logger);
+    }
+
+    /**
+     * Charges {@code payer} and pays {@code payee} on the economy thread. Must be
+     * called on the main thread, after the stock of the trade has been reserved.
+     * {@code callback} is run on the main thread with the outcome; on
+     * {@link Result#SUCCESS}, it must then either {@link #complete(Trade)} or
+     * {@link #compensate(Trade)} the trade.
+     *
+     * @param shopID   id of the shop in the {@code ShopRegistry}, may be
+     *                 {@code null}
+     * @param payer    UUID of the player paying, or {@code null} for an admin
+     * @param payee    UUID of the player paid, or {@code null} for an admin
+     * @param total    money involved in the trade
+     * @param callback run on the main thread with the trade and the outcome
+     */
+    public void submit(UUID shopID, UUID payer, UUID payee, double total, BiConsumer<Trade, Result> callback) {
+        Trade trade = new Trade(UUID.randomUUID(), shopID, payer, payee, total, State.PENDING,
+                System.currentTimeMillis());
+        executor.supply(() -> pay(trade)).exceptionally(ex -> {
+            logger.log(Level.SEVERE, "Payment of " + trade + " failed", ex);
+            return Result.FAILED;
+        }).thenAccept(result -> {
+            completions.add(() -> callback.accept(trade, result));
+            if (!shutdown) {
+                Bukkit.getScheduler().runTask(plugin, this::drain);
+            }
+        });
+    }
+
+    /**
+     * Removes a paid trade from the journal once its items have been transferred.
+     *
+     * @param trade trade paid with {@link Result#SUCCESS}
+     */
+    public void complete(Trade trade) {
+        database.deleteJournal(trade.getId());
+    }
+
+    /**
+     * Refunds a paid trade whose items could not be transferred, e.g. because the
+     * customer left in the meantime.
+     *
+     * @param trade trade paid with {@link Result#SUCCESS}
+     */
+    public void compensate(Trade trade) {
+        runOnEconomyThread(() -> refund(trade));
+    }
+
+    /**
+     * Settles the trades left in the journal by a crash, on the economy thread.
+     * Paid trades are refunded: their items were never handed over, or were, but
+     * reverted with the rest of the world since its last save. Pending trades may
+     * have been partly paid, which cannot be told from the journal, so they are
+     * only logged for server admins to check.
+     */
+    public void reconcile() {
+        runOnEconomyThread(() -> {
+            for (Trade trade : database.loadJournal()) {
+                if (trade.getState() == State.PAID) {
+                    logger.log(Level.WARNING, "Refunding interrupted " + trade);
+                    refund(trade);
+                } else {
+                    logger.log(Level.WARNING, "Interrupted " + trade + " may have been partly paid, "
+                            + "check the balances of the players involved");
+                    database.deleteJournal(trade.getId());
+                }
+            }
+        });
+    }
+
+    /**
+     * Stops accepting payments and waits for queued ones to be made. Outcomes
+     * that have not been handed to the main thread yet are handled right away,
+     * so this must be called on the main thread, before shops are saved.
+     */
+    public void shutdown() {
+        shutdown = true;
+        executor.shutdown();
+        drain();
+    }
+
+    private void drain() {
+        Runnable completion;
+        while ((completion = completions.poll()) != null) {
+            completion.run();
+        }
+    }
+
+    /**
+     * Runs journal work on the economy thread, or right away once the pipeline is
+     * shut down, so that outcomes handled during shutdown are still settled.
+     */
+    private void runOnEconomyThread(Runnable task) {
+        if (shutdown) {
+            task.run();
+        } else {
+            executor.run(task).exceptionally(ex -> {
+                logger.log(Level.SEVERE, "Could not settle trade, it is left for the next startup", ex);
+                return null;
+            });
+        }
+    }
+
+    private Result pay(Trade trade) {
+        if (!database.journalTrade(trade)) {
+            return Result.FAILED;
+        }
+        OfflinePlayer payer = trade.getPayer() == null ? null : Bukkit.getOfflinePlayer(trade.getPayer());
+        OfflinePlayer payee = trade.getPayee() == null ? null : Bukkit.getOfflinePlayer(trade.getPayee());
+        boolean withdrawn = false;
+        try {
+            if (payer != null) {
+                if (!economy.has(payer, trade.getTotal())) {
+                    database.deleteJournal(trade.getId());
+                    return Result.INSUFFICIENT_FUNDS;
+                }
+                EconomyResponse response = economy.withdrawPlayer(payer, trade.getTotal());
+                if (!response.transactionSuccess()) {
+                    logger.log(Level.WARNING, "Could not charge " + trade + ": " + response.errorMessage);
+                    database.deleteJournal(trade.getId());
+                    return Result.FAILED;
+                }
+                withdrawn = true;
+            }
+            if (payee != null) {
+                EconomyResponse response = economy.depositPlayer(payee, trade.getTotal());
+                if (!response.transactionSuccess()) {
+                    logger.log(Level.WARNING, "Could not pay " + trade + ": " + response.errorMessage);
+                    refundPayer(trade, withdrawn);
+                    return Result.FAILED;
+                }
+            }
+        } catch (RuntimeException ex) {
+            // Whether the failed leg moved any money is unknown, so the trade is left
+            // pending for server admins rather than refunded.
+            logger.log(Level.SEVERE, "Economy failed during " + trade + ", it is left in the journal", ex);
+            return Result.FAILED;
+        }
+        trade.state = State.PAID;
+        database.updateJournal(trade);
+        return Result.SUCCESS;
+    }
+
+    /**
+     * Moves the money of a paid trade back, once the trade is committed to the
+     * journal as pending again. A trade that cannot be moved back is kept in the
+     * journal.
+     */
+    private void refund(Trade trade) {
+        trade.state = State.PENDING;
+        if (!database.journalTrade(trade)) {
+            trade.state = State.PAID;
+            logger.log(Level.SEVERE, "Could not journal refund of " + trade + ", it is left for the next startup");
+            return;
+        }
+        try {
+            if (trade.getPayee() != null && !economy
+                    .withdrawPlayer(Bukkit.getOfflinePlayer(trade.getPayee()), trade.getTotal()).transactionSuccess()) {
+                logger.log(Level.SEVERE, "Could not take back payment of " + trade + "! Report this error!");
+                return;
+            }
+            refundPayer(trade, trade.getPayer() != null);
+        } catch (RuntimeException ex) {
+            logger.log(Level.SEVERE, "Economy failed during refund of " + trade + ", it is left in the journal", ex);
+        }
+    }
+
+    /**
+     * Gives the payer of a pending trade their money back, if they were charged,
+     * and removes the trade from the journal.
+     */
+    private void refundPayer(Trade trade, boolean withdrawn) {
+        if (withdrawn && !economy.depositPlayer(Bukkit.getOfflinePlayer(trade.getPayer()), trade.getTotal())
+                .transactionSuccess()) {
+            logger.log(Level.SEVERE, "Could not refund " + trade + "! Report this error!");
+            return;
+        }
+        database.deleteJournal(trade.getId());
+    }
+}
@@ -20,9 +20,9 @@ package com.paratopiamc.customshop.shop.briefcase;
 
 import java.util.Arrays;
 import java.util.List;
-import java.util.concurrent.CompletableFuture;
 import com.paratopiamc.customshop.plugin.CustomShop;
 import com.paratopiamc.customshop.shop.ShopCreator;
+import com.paratopiamc.customshop.shop.ShopType;
 import com.paratopiamc.customshop.utils.LanguageUtils;
 import org.bukkit.Location;
 import org.bukkit.Material;
@@ -39,21 +39,21 @@ import org.bukkit.inventory.meta.ItemMeta;
  */
 public class BriefcaseCreator extends ShopCreator {
     @Override
-    public void createShop(Location location, Player owner, ItemStack item, boolean isAdmin) {
+    public boolean createShop(Location location, Player owner, ItemStack item, boolean isAdmin) {
         Boolean nullable = CustomShop.getPlugin().support().isDefaultModel(item);
         if (nullable != null && nullable.booleanValue()) {
             owner.sendMessage(LanguageUtils.getString("create.briefcase.locked"));
-            return;
+            return false;
         }
 
         if (item.getItemMeta().getCustomModelData() == CustomShop.getPlugin().getConfig()
                 .getInt("defaults.briefcase")) {
             owner.sendMessage(LanguageUtils.getString("create.briefcase.locked"));
-            return;
+            return false;
         }
         if (location.getBlock().getType() != Material.AIR) {
             owner.sendMessage(LanguageUtils.getString("create.briefcase.invalid-block"));
-            return;
+            return false;
         }
 
         location.getBlock().setType(Material.BARRIER);
@@ -83,10 +83,9 @@ public class BriefcaseCreator extends ShopCreator {
         }
 
         lockArmorStand(armorStand);
+        registerShop(armorStand, ShopType.BRIEFCASE, owner, isAdmin);
 
-        CompletableFuture.runAsync(() -> {
-            CustomShop.getPlugin().getDatabase().incrementTotalShopsOwned(owner.getUniqueId());
-            owner.sendMessage(LanguageUtils.getString("create.briefcase.success"));
-        });
+        owner.sendMessage(LanguageUtils.getString("create.briefcase.success"));
+        return true;
     }
 }
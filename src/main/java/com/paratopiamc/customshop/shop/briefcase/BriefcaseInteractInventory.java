@@ -22,6 +22,7 @@ import com.paratopiamc.customshop.gui.BriefcaseGUI;
 import com.paratopiamc.customshop.gui.ShopGUI;
 import com.paratopiamc.customshop.player.PlayerState;
 import com.paratopiamc.customshop.plugin.CustomShop;
+import com.paratopiamc.customshop.shop.QuickTrade;
 import com.paratopiamc.customshop.shop.conversation.AddConversationFactory;
 import com.paratopiamc.customshop.shop.conversation.PurchaseConversationFactory;
 import com.paratopiamc.customshop.shop.conversation.RetrieveConversationFactory;
@@ -32,12 +33,15 @@ import org.bukkit.Bukkit;
 import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.Listener;
+import org.bukkit.event.inventory.ClickType;
 import org.bukkit.event.inventory.InventoryClickEvent;
 import org.bukkit.inventory.ItemStack;
 import org.bukkit.inventory.meta.ItemMeta;
 
 /**
- * Handlers for interactions with briefcase's GUI.
+ * Handlers for interactions with briefcase's GUI. Customers trade right away
+ * with a {@link QuickTrade} click, or after entering the amount in chat on
+ * right-click.
  */
 public class BriefcaseInteractInventory implements Listener {
     /**
@@ -51,7 +55,10 @@ public class BriefcaseInteractInventory implements Listener {
             return;
         }
         Player player = (Player) evt.getWhoClicked();
-        PlayerState state = PlayerState.getPlayerState(player);
+        PlayerState state = PlayerState.findPlayerState(player);
+        if (state == null) {
+            return;
+        }
         ShopGUI shopGUI = state.getShopGUI();
 
         if (shopGUI instanceof BriefcaseGUI
@@ -72,12 +79,21 @@ public class BriefcaseInteractInventory implements Listener {
                     Bukkit.getScheduler().runTask(CustomShop.getPlugin(), () -> player.closeInventory());
             } else if (evt.getSlot() < 27) {
                 ItemStack item = ui.getItem();
-                if (ui.isSelling()) {
-                    state.startTransaction(item, new PurchaseConversationFactory());
-                } else {
-                    state.startTransaction(item, new SellConversationFactory());
+                QuickTrade quickTrade = QuickTrade.of(evt.getClick());
+                if (quickTrade != null) {
+                    if (ui.isSelling()) {
+                        ui.purchaseItem(item, quickTrade.getAmount(item, ui.getPurchasableAmount(item)));
+                    } else {
+                        ui.sellItem(item, quickTrade.getAmount(item, ui.getSellableAmount(item)));
+                    }
+                } else if (evt.getClick() == ClickType.RIGHT) {
+                    if (ui.isSelling()) {
+                        state.startTransaction(item, new PurchaseConversationFactory());
+                    } else {
+                        state.startTransaction(item, new SellConversationFactory());
+                    }
+                    Bukkit.getScheduler().runTask(CustomShop.getPlugin(), () -> player.closeInventory());
                 }
-                Bukkit.getScheduler().runTask(CustomShop.getPlugin(), () -> player.closeInventory());
             }
         } else if (ui.interactingInventoryIsOwnerView()) {
             ItemMeta itemMeta = evt.getCurrentItem().getItemMeta();
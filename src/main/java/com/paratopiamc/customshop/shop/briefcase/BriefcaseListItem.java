@@ -21,8 +21,10 @@ package com.paratopiamc.customshop.shop.briefcase;
 import com.paratopiamc.customshop.gui.BriefcaseGUI;
 import com.paratopiamc.customshop.player.PlayerState;
 import com.paratopiamc.customshop.plugin.CustomShop;
+import com.paratopiamc.customshop.shop.ShopType;
 import com.paratopiamc.customshop.shop.conversation.SetPriceConversationFactory;
 import com.paratopiamc.customshop.utils.LanguageUtils;
+import com.paratopiamc.customshop.utils.ShopTags;
 import com.paratopiamc.customshop.utils.ShopUtils;
 import org.bukkit.Bukkit;
 import org.bukkit.Material;
@@ -53,7 +55,7 @@ public class BriefcaseListItem implements Listener {
         if (armorStand == null) {
             return;
         }
-        if (!armorStand.getCustomName().equals("§5§lNewt's Briefcase")) {
+        if (ShopTags.getType(armorStand) != ShopType.BRIEFCASE) {
             return;
         } else {
             // For creative mode
@@ -74,7 +76,7 @@ public class BriefcaseListItem implements Listener {
             ItemStack itemInHand = player.getEquipment().getItemInMainHand();
             if (itemInHand.getType().equals(Material.AIR)) {
                 ui.openOwnerUI();
-                state.setShopGUI(ui);
+                state.setShopGUI(ui, true);
             } else {
                 if (ui.hasItem()) {
                     player.sendMessage(LanguageUtils.getString("briefcase-already-initialized"));
@@ -82,7 +84,7 @@ public class BriefcaseListItem implements Listener {
                     // New conversation must begin in a different tick that cancelled
                     Bukkit.getScheduler().runTask(CustomShop.getPlugin(),
                             () -> state.startConversation(new SetPriceConversationFactory(itemInHand)));
-                    state.setShopGUI(ui);
+                    state.setShopGUI(ui, true);
                 }
             }
         }
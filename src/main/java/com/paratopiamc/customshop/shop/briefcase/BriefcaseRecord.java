@@ -0,0 +1,133 @@
+/*
+ *  This file is part of CustomShop. Copyright (c) 2021 Paratopia.
+ *
+ *  CustomShop is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  CustomShop is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with CustomShop. If not, see <https://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.paratopiamc.customshop.shop.briefcase;
+
+import java.util.Arrays;
+import java.util.List;
+import com.paratopiamc.customshop.plugin.CustomShopLogger;
+import com.paratopiamc.customshop.plugin.CustomShopLogger.Level;
+import com.paratopiamc.customshop.shop.ShopRecord;
+import com.paratopiamc.customshop.shop.ShopType;
+import org.bukkit.Material;
+import org.bukkit.entity.ArmorStand;
+import org.bukkit.inventory.EntityEquipment;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.meta.ItemMeta;
+
+/**
+ * Record of a Newt's Briefcase: the item held in the armor stand's leggings
+ * slot, and the price, stock and selling status stored in the lore of the
+ * placeholder in its chestplate slot.
+ */
+public class BriefcaseRecord extends ShopRecord {
+    private ItemStack item;
+    private double price;
+    private int quantity;
+    private boolean selling = true;
+
+    public BriefcaseRecord(ArmorStand armorStand) {
+        super(armorStand, ShopType.BRIEFCASE);
+        EntityEquipment equipment = armorStand.getEquipment();
+        ItemStack leggings = equipment.getLeggings();
+        this.item = leggings == null || leggings.getType() == Material.AIR ? null : leggings;
+        ItemStack placeHolder = equipment.getChestplate();
+        ItemMeta meta = placeHolder == null || placeHolder.getType() == Material.AIR ? null
+                : placeHolder.getItemMeta();
+        List<String> lore = meta == null ? null : meta.getLore();
+        if (lore == null || lore.size() < 3) {
+            CustomShopLogger.sendMessage("Briefcase with incomplete placeHolder detected at "
+                    + armorStand.getLocation() + ", unable to read shop info. Report this error!", Level.FAIL);
+        } else {
+            try {
+                this.price = Double.parseDouble(lore.get(0));
+            } catch (NumberFormatException e) {
+                CustomShopLogger.sendMessage("Briefcase with invalid price \"" + lore.get(0) + "\" detected at "
+                        + armorStand.getLocation() + ", price reset to 0. Report this error!", Level.FAIL);
+            }
+            try {
+                this.quantity = Integer.parseInt(lore.get(1));
+            } catch (NumberFormatException e) {
+                CustomShopLogger.sendMessage("Briefcase with invalid quantity \"" + lore.get(1) + "\" detected at "
+                        + armorStand.getLocation() + ", quantity reset to 0. Report this error!", Level.FAIL);
+            }
+            this.selling = Boolean.parseBoolean(lore.get(2));
+        }
+    }
+
+    /**
+     * Returns the item that the shop is selling/buying. The item is shared with the
+     * record and must not be modified.
+     *
+     * @return {@code null} if the shop has no item set
+     */
+    public ItemStack getItem() {
+        return this.item;
+    }
+
+    public double getPrice() {
+        return this.price;
+    }
+
+    public int getQuantity() {
+        return this.quantity;
+    }
+
+    public boolean isSelling() {
+        return this.selling;
+    }
+
+    /**
+     * Sets the item that the shop is selling/buying and its price.
+     *
+     * @param item  item of amount 1
+     * @param price price of the item
+     */
+    public void setItem(ItemStack item, double price) {
+        this.item = item.clone();
+        this.price = price;
+        markDirty();
+    }
+
+    public void setQuantity(int quantity) {
+        this.quantity = quantity;
+        markDirty();
+    }
+
+    public void setSelling(boolean selling) {
+        this.selling = selling;
+        markDirty();
+    }
+
+    @Override
+    protected void write() {
+        EntityEquipment equipment = armorStand.getEquipment();
+        ItemStack placeHolder = equipment.getChestplate();
+        if (placeHolder == null || placeHolder.getType() == Material.AIR) {
+            CustomShopLogger.sendMessage("Briefcase without placeHolder detected at " + armorStand.getLocation()
+                    + ", unable to update shop info. Report this error!", Level.FAIL);
+            return;
+        }
+        ItemMeta meta = placeHolder.getItemMeta();
+        meta.setLore(Arrays.asList(String.valueOf(this.price), String.valueOf(this.quantity),
+                String.valueOf(this.selling)));
+        placeHolder.setItemMeta(meta);
+        equipment.setChestplate(placeHolder);
+        equipment.setLeggings(this.item);
+    }
+}
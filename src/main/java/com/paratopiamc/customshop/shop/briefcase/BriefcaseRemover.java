@@ -24,6 +24,7 @@ import com.paratopiamc.customshop.plugin.CustomShopLogger;
 import com.paratopiamc.customshop.plugin.CustomShopLogger.Level;
 import com.paratopiamc.customshop.shop.ShopRemover;
 import com.paratopiamc.customshop.utils.LanguageUtils;
+import com.paratopiamc.customshop.utils.ShopTags;
 import org.bukkit.Bukkit;
 import org.bukkit.Location;
 import org.bukkit.Material;
@@ -44,6 +45,7 @@ public class BriefcaseRemover extends ShopRemover {
         this.targetBlock = targetBlock;
         this.armorStand = armorStand;
         this.location = armorStand.getLocation();
+        this.ownerUUID = ShopTags.getOwnerID(armorStand);
 
         item = armorStand.getEquipment().getLeggings();
         ItemStack placeHolder = armorStand.getEquipment().getChestplate();
@@ -54,14 +56,6 @@ public class BriefcaseRemover extends ShopRemover {
                     Level.FAIL);
         } else {
             ItemMeta meta = placeHolder.getItemMeta();
-            if (meta.hasDisplayName()) {
-                this.ownerUUID = UUID.fromString(meta.getDisplayName());
-            } else {
-                CustomShopLogger.sendMessage("Attempting to remove briefcase at " + location
-                        + " with chest item with missing display name! Report this error!", Level.FAIL);
-                return;
-            }
-
             List<String> info = meta.getLore();
             int amount = Integer.parseInt(info.get(1));
 
@@ -80,6 +74,7 @@ public class BriefcaseRemover extends ShopRemover {
             return null;
         } else {
             location.getBlock().setType(Material.AIR);
+            unregisterShop();
             armorStand.remove();
             return this.ownerUUID;
         }
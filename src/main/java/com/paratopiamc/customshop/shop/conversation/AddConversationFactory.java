@@ -48,7 +48,7 @@ public class AddConversationFactory extends ConversationFactory {
                 if (canceller != null) {
                     player.sendMessage(LanguageUtils.getString("add-convo-cancelled"));
                 }
-                PlayerState.getPlayerState(player).clearShopInteractions();
+                PlayerState.clearShopInteractions(player);
             }
         });
         this.cancellers.add(new InactivityConversationCanceller(plugin, 10));
@@ -51,7 +51,7 @@ public class PurchaseConversationFactory extends ConversationFactory {
                 if (canceller != null) {
                     player.sendMessage(LanguageUtils.getString("purchase-convo-cancelled"));
                 }
-                PlayerState.getPlayerState(player).clearShopInteractions();
+                PlayerState.clearShopInteractions(player);
             }
         });
         this.cancellers.add(new InactivityConversationCanceller(plugin, 10));
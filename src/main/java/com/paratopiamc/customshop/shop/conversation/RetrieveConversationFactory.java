@@ -47,7 +47,7 @@ public class RetrieveConversationFactory extends ConversationFactory {
                 if (canceller != null) {
                     player.sendMessage(LanguageUtils.getString("retrieve-convo-cancelled"));
                 }
-                PlayerState.getPlayerState(player).clearShopInteractions();
+                PlayerState.clearShopInteractions(player);
             }
         });
         this.cancellers.add(new InactivityConversationCanceller(plugin, 10));
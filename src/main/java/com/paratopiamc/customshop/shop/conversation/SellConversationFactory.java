@@ -51,7 +51,7 @@ public class SellConversationFactory extends ConversationFactory {
                 if (canceller != null) {
                     player.sendMessage(LanguageUtils.getString("sell-convo-cancelled"));
                 }
-                PlayerState.getPlayerState(player).clearShopInteractions();
+                PlayerState.clearShopInteractions(player);
             }
         });
         this.cancellers.add(new InactivityConversationCanceller(plugin, 10));
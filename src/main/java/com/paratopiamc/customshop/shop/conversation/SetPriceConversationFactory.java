@@ -50,7 +50,7 @@ public class SetPriceConversationFactory extends ConversationFactory {
                 if (canceller != null) {
                     player.sendMessage(LanguageUtils.getString("price-convo-cancelled"));
                 }
-                PlayerState.getPlayerState(player).clearShopInteractions();
+                PlayerState.clearShopInteractions(player);
             }
         });
         this.cancellers.add(new InactivityConversationCanceller(CustomShop.getPlugin(), 10));
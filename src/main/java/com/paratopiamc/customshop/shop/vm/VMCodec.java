@@ -0,0 +1,297 @@
+/*
+ *  This file is part of CustomShop. Copyright (c) 2021 Paratopia.
+ *
+ *  CustomShop is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  CustomShop is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with CustomShop. If not, see <https://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.paratopiamc.customshop.shop.vm;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import org.bukkit.Material;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.meta.ItemMeta;
+import org.bukkit.util.io.BukkitObjectInputStream;
+import org.bukkit.util.io.BukkitObjectOutputStream;
+
+/**
+ * Binary codec of a vending machine's contents and prices, stored in the armor
+ * stand's {@code PersistentDataContainer}. Version 2 of the format is laid out
+ * as follows, where varints are unsigned LEB128:
+ *
+ * <pre>
+ * byte    version
+ * varint  number of non-empty slots, followed by each slot:
+ *   byte    slot
+ *   byte    kind of item, see below
+ *   double  price
+ *   varint  amount
+ *   varint  length of the item, followed by the item
+ * </pre>
+ *
+ * Items are single items of the stack serialized with
+ * {@link BukkitObjectOutputStream}, which records the data version that they
+ * were saved at, so that the server upgrades them like any other item after
+ * materials are renamed. Slots of version 1 of the format, which stored the
+ * material by name and the item meta separately, are kept as such until they
+ * can be read.
+ * <p>
+ * Each slot is decoded on its own. A slot that cannot be read, e.g. as its
+ * material no longer exists, is kept verbatim and written back as is, so that
+ * neither the slot nor the rest of the vending machine is lost.
+ */
+final class VMCodec {
+    /** Current version of the format. */
+    static final byte VERSION = 2;
+    /** Kind of slot holding an item serialized as a whole. */
+    private static final byte ITEM = 0;
+    /** Kind of slot holding a material name followed by item meta, as in version 1. */
+    private static final byte LEGACY_ITEM = 1;
+
+    private VMCodec() {
+    }
+
+    /**
+     * Encodes the contents and prices of a vending machine.
+     *
+     * @param contents   items in each slot, {@code null} for empty slots
+     * @param prices     price of each slot
+     * @param itemBlobs  serialized single item of each slot, entries that are
+     *                   {@code null} are serialized and filled in
+     * @param unreadable slots that could not be decoded, as returned by
+     *                   {@link #decode}, written back as they are
+     * @return encoded data
+     * @throws IOException if an item cannot be serialized
+     */
+    static byte[] encode(ItemStack[] contents, double[] prices, byte[][] itemBlobs, byte[][] unreadable)
+            throws IOException {
+        int count = 0;
+        for (int i = 0; i < contents.length; i++) {
+            if (contents[i] != null || unreadable[i] != null) {
+                count++;
+            }
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + count * 64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(VERSION);
+        writeVarInt(out, count);
+        for (int i = 0; i < contents.length; i++) {
+            if (unreadable[i] != null) {
+                out.writeByte(i);
+                out.write(unreadable[i]);
+                continue;
+            }
+            ItemStack item = contents[i];
+            if (item == null) {
+                continue;
+            }
+            if (itemBlobs[i] == null) {
+                itemBlobs[i] = serializeItem(item);
+            }
+            out.writeByte(i);
+            writeSlot(out, ITEM, prices[i], item.getAmount(), itemBlobs[i]);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Decodes the contents and prices of a vending machine into the given arrays.
+     *
+     * @param data       encoded data
+     * @param contents   array to fill with the item in each slot
+     * @param prices     array to fill with the price of each slot
+     * @param itemBlobs  array to fill with the serialized single item of each
+     *                   slot, left {@code null} for slots to be serialized again
+     * @param unreadable array to fill with the encoded slots whose item could not
+     *                   be read, which are left empty in {@code contents}
+     * @return number of slots that could not be read
+     * @throws IOException if the data is malformed or of an unknown version
+     */
+    static int decode(byte[] data, ItemStack[] contents, double[] prices, byte[][] itemBlobs, byte[][] unreadable)
+            throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        byte version = in.readByte();
+        if (version == 1) {
+            return decodeVersion1(in, contents, prices, unreadable);
+        } else if (version != VERSION) {
+            throw new IOException("Unknown vending machine data version " + version);
+        }
+        int failed = 0;
+        int count = readVarInt(in);
+        for (int n = 0; n < count; n++) {
+            int slot = readSlot(in, contents.length);
+            byte kind = in.readByte();
+            double price = in.readDouble();
+            int amount = readVarInt(in);
+            byte[] blob = new byte[readVarInt(in)];
+            in.readFully(blob);
+            ItemStack item = kind == ITEM ? deserializeItem(blob) : kind == LEGACY_ITEM ? readLegacyItem(blob) : null;
+            if (item == null) {
+                unreadable[slot] = encodeSlot(kind, price, amount, blob);
+                failed++;
+                continue;
+            }
+            item.setAmount(amount);
+            contents[slot] = item;
+            prices[slot] = price;
+            // Items of the legacy kind are serialized as a whole on the next write.
+            itemBlobs[slot] = kind == ITEM ? blob : null;
+        }
+        return failed;
+    }
+
+    /**
+     * Decodes the slots of version 1 of the format, which starts with the names
+     * of the materials used, after the version.
+     */
+    private static int decodeVersion1(DataInputStream in, ItemStack[] contents, double[] prices,
+            byte[][] unreadable) throws IOException {
+        String[] names = new String[readVarInt(in)];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = in.readUTF();
+        }
+        int failed = 0;
+        int count = readVarInt(in);
+        for (int n = 0; n < count; n++) {
+            int slot = readSlot(in, contents.length);
+            int material = readVarInt(in);
+            if (material >= names.length) {
+                throw new IOException("Material " + material + " out of bounds");
+            }
+            int amount = readVarInt(in);
+            double price = in.readDouble();
+            byte[] meta = new byte[readVarInt(in)];
+            in.readFully(meta);
+            byte[] blob = encodeLegacyItem(names[material], meta);
+            ItemStack item = readLegacyItem(blob);
+            if (item == null) {
+                unreadable[slot] = encodeSlot(LEGACY_ITEM, price, amount, blob);
+                failed++;
+                continue;
+            }
+            item.setAmount(amount);
+            contents[slot] = item;
+            prices[slot] = price;
+        }
+        return failed;
+    }
+
+    private static int readSlot(DataInputStream in, int size) throws IOException {
+        int slot = in.readUnsignedByte();
+        if (slot >= size) {
+            throw new IOException("Slot " + slot + " out of bounds");
+        }
+        return slot;
+    }
+
+    private static void writeSlot(DataOutputStream out, byte kind, double price, int amount, byte[] blob)
+            throws IOException {
+        out.writeByte(kind);
+        out.writeDouble(price);
+        writeVarInt(out, amount);
+        writeVarInt(out, blob.length);
+        out.write(blob);
+    }
+
+    private static byte[] encodeSlot(byte kind, double price, int amount, byte[] blob) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(16 + blob.length);
+        writeSlot(new DataOutputStream(bytes), kind, price, amount, blob);
+        return bytes.toByteArray();
+    }
+
+    private static byte[] serializeItem(ItemStack item) throws IOException {
+        ItemStack single = item.clone();
+        // The amount is stored separately, so that the serialized item remains
+        // valid when only the amount changes.
+        single.setAmount(1);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (BukkitObjectOutputStream out = new BukkitObjectOutputStream(bytes)) {
+            out.writeObject(single);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Deserializes an item.
+     *
+     * @return {@code null} if the item cannot be read
+     */
+    private static ItemStack deserializeItem(byte[] blob) {
+        try (BukkitObjectInputStream in = new BukkitObjectInputStream(new ByteArrayInputStream(blob))) {
+            ItemStack item = (ItemStack) in.readObject();
+            return item == null || item.getType() == Material.AIR ? null : item;
+        } catch (IOException | ClassNotFoundException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static byte[] encodeLegacyItem(String material, byte[] meta) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(32 + meta.length);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeUTF(material);
+        out.write(meta);
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Reads an item stored as its material name followed by its serialized item
+     * meta, if any.
+     *
+     * @return {@code null} if the material is unknown or the meta cannot be read
+     */
+    private static ItemStack readLegacyItem(byte[] blob) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(blob))) {
+            Material material = Material.getMaterial(in.readUTF());
+            if (material == null || material == Material.AIR) {
+                return null;
+            }
+            ItemStack item = new ItemStack(material);
+            byte[] meta = new byte[in.available()];
+            in.readFully(meta);
+            if (meta.length > 0) {
+                try (BukkitObjectInputStream metaIn = new BukkitObjectInputStream(new ByteArrayInputStream(meta))) {
+                    item.setItemMeta((ItemMeta) metaIn.readObject());
+                }
+            }
+            return item;
+        } catch (IOException | ClassNotFoundException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarInt(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+}
@@ -18,12 +18,9 @@
 
 package com.paratopiamc.customshop.shop.vm;
 
-import java.util.List;
-import java.util.concurrent.CompletableFuture;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
 import com.paratopiamc.customshop.plugin.CustomShop;
 import com.paratopiamc.customshop.shop.ShopCreator;
+import com.paratopiamc.customshop.shop.ShopType;
 import com.paratopiamc.customshop.utils.LanguageUtils;
 import org.bukkit.Location;
 import org.bukkit.Material;
@@ -40,24 +37,24 @@ import org.bukkit.inventory.meta.BlockStateMeta;
  */
 public class VMCreator extends ShopCreator {
     @Override
-    public void createShop(Location location, Player owner, ItemStack item, boolean isAdmin) {
+    public boolean createShop(Location location, Player owner, ItemStack item, boolean isAdmin) {
         Boolean nullable = CustomShop.getPlugin().support().isDefaultModel(item);
         if (nullable != null && nullable.booleanValue()) {
             owner.sendMessage(LanguageUtils.getString("create.vending-machine.locked"));
-            return;
+            return false;
         }
 
         if (item.getItemMeta().getCustomModelData() == CustomShop.getPlugin().getConfig()
                 .getInt("defaults.vending-machine")) {
             owner.sendMessage(LanguageUtils.getString("create.vending-machine.locked"));
-            return;
+            return false;
         }
 
         Location locationAddOne = location.clone();
         locationAddOne.setY(location.getY() + 1);
         if (!location.getBlock().getType().isAir() || !locationAddOne.getBlock().getType().isAir()) {
             owner.sendMessage(LanguageUtils.getString("create.vending-machine.invalid-block"));
-            return;
+            return false;
         }
 
         location.getBlock().setType(Material.BARRIER);
@@ -70,9 +67,7 @@ public class VMCreator extends ShopCreator {
 
         ItemStack container = new ItemStack(Material.SHULKER_BOX);
         BlockStateMeta blockMeta = (BlockStateMeta) container.getItemMeta();
-        List<String> lore = Stream.<String>generate(() -> "0.0").limit(27).collect(Collectors.toList());
         blockMeta.setDisplayName(owner.getUniqueId().toString());
-        blockMeta.setLore(lore);
 
         container.setItemMeta(blockMeta);
         armorStandBody.setChestplate(container);
@@ -82,10 +77,9 @@ public class VMCreator extends ShopCreator {
         }
 
         lockArmorStand(armorStand);
+        registerShop(armorStand, ShopType.VENDING_MACHINE, owner, isAdmin);
 
-        CompletableFuture.runAsync(() -> {
-            CustomShop.getPlugin().getDatabase().incrementTotalShopsOwned(owner.getUniqueId());
-            owner.sendMessage(LanguageUtils.getString("create.vending-machine.success"));
-        });
+        owner.sendMessage(LanguageUtils.getString("create.vending-machine.success"));
+        return true;
     }
 }
@@ -22,19 +22,23 @@ import com.paratopiamc.customshop.gui.ShopGUI;
 import com.paratopiamc.customshop.gui.VMGUI;
 import com.paratopiamc.customshop.player.PlayerState;
 import com.paratopiamc.customshop.plugin.CustomShop;
+import com.paratopiamc.customshop.shop.QuickTrade;
 import com.paratopiamc.customshop.shop.conversation.PurchaseConversationFactory;
 import com.paratopiamc.customshop.utils.LanguageUtils;
 import org.bukkit.Bukkit;
 import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.Listener;
+import org.bukkit.event.inventory.ClickType;
 import org.bukkit.event.inventory.InventoryClickEvent;
 import org.bukkit.inventory.ItemStack;
 import org.bukkit.inventory.meta.ItemMeta;
 
 /**
  * Listener for players interacting with custom shops' GUI, containing handlers
- * for which the player (owner or not) purchases items.
+ * for which the player (owner or not) purchases items. Items are purchased
+ * right away with a {@link QuickTrade} click, or after entering the amount in
+ * chat on right-click.
  */
 public class VMInteractInventory implements Listener {
 
@@ -49,7 +53,10 @@ public class VMInteractInventory implements Listener {
             return;
         }
         Player player = (Player) evt.getWhoClicked();
-        PlayerState state = PlayerState.getPlayerState(player);
+        PlayerState state = PlayerState.findPlayerState(player);
+        if (state == null) {
+            return;
+        }
         ShopGUI shopGUI = state.getShopGUI();
 
         if (shopGUI instanceof VMGUI
@@ -70,8 +77,13 @@ public class VMInteractInventory implements Listener {
         } else if (evt.getSlot() < 27) {
             VMGUI ui = (VMGUI) shopGUI;
             ItemStack item = ui.getItem(evt.getSlot());
-            state.startTransaction(item, new PurchaseConversationFactory());
-            Bukkit.getScheduler().runTask(CustomShop.getPlugin(), () -> player.closeInventory());
+            QuickTrade quickTrade = QuickTrade.of(evt.getClick());
+            if (quickTrade != null) {
+                ui.purchaseItem(item, quickTrade.getAmount(item, ui.getPurchasableAmount(item)));
+            } else if (evt.getClick() == ClickType.RIGHT) {
+                state.startTransaction(item, new PurchaseConversationFactory());
+                Bukkit.getScheduler().runTask(CustomShop.getPlugin(), () -> player.closeInventory());
+            }
         }
 
     }
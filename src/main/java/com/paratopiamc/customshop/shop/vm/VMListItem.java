@@ -21,8 +21,10 @@ package com.paratopiamc.customshop.shop.vm;
 import com.paratopiamc.customshop.gui.VMGUI;
 import com.paratopiamc.customshop.player.PlayerState;
 import com.paratopiamc.customshop.plugin.CustomShop;
+import com.paratopiamc.customshop.shop.ShopType;
 import com.paratopiamc.customshop.shop.conversation.SetPriceConversationFactory;
 import com.paratopiamc.customshop.utils.LanguageUtils;
+import com.paratopiamc.customshop.utils.ShopTags;
 import com.paratopiamc.customshop.utils.ShopUtils;
 import org.bukkit.Bukkit;
 import org.bukkit.Material;
@@ -54,7 +56,7 @@ public class VMListItem implements Listener {
         if (armorStand == null) {
             return;
         }
-        if (!armorStand.getCustomName().equals("§5§lVending Machine")) {
+        if (ShopTags.getType(armorStand) != ShopType.VENDING_MACHINE) {
             return;
         } else {
             // For creative mode
@@ -69,6 +71,12 @@ public class VMListItem implements Listener {
                 player.sendMessage(LanguageUtils.getString("shop-currently-in-use.vending-machine"));
                 return;
             }
+            // Edits would overwrite the slots whose items could not be read.
+            VMRecord record = (VMRecord) CustomShop.getPlugin().getShopIndex().getRecord(armorStand);
+            if (record == null || !record.isIntact()) {
+                player.sendMessage(LanguageUtils.getString("shop-unreadable"));
+                return;
+            }
             VMGUI ui = new VMGUI(armorStand, player);
             // Note that on top of what getItemInMainHand()'s documentation suggests, the
             // method most possibly returns a shallow copy.
@@ -80,7 +88,7 @@ public class VMListItem implements Listener {
                 Bukkit.getScheduler().runTask(CustomShop.getPlugin(),
                         () -> state.startConversation(new SetPriceConversationFactory(itemInHand)));
             }
-            state.setShopGUI(ui);
+            state.setShopGUI(ui, true);
         }
     }
 }
@@ -0,0 +1,372 @@
+/*
+ *  This file is part of CustomShop. Copyright (c) 2021 Paratopia.
+ *
+ *  CustomShop is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  CustomShop is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with CustomShop. If not, see <https://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.paratopiamc.customshop.shop.vm;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import com.paratopiamc.customshop.plugin.CustomShop;
+import com.paratopiamc.customshop.plugin.CustomShopLogger;
+import com.paratopiamc.customshop.plugin.CustomShopLogger.Level;
+import com.paratopiamc.customshop.shop.ShopRecord;
+import com.paratopiamc.customshop.shop.ShopType;
+import com.paratopiamc.customshop.utils.ShopTags;
+import org.bukkit.block.ShulkerBox;
+import org.bukkit.entity.ArmorStand;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.meta.BlockStateMeta;
+
+/**
+ * Record of a vending machine: the item and price of each slot, stored in the
+ * armor stand's {@code PersistentDataContainer} by {@link VMCodec}. Similar
+ * items are priced the same, as prices are listed per item type.
+ * <p>
+ * Vending machines created by older versions of the plugin store their items in
+ * the shulker box held by the armor stand, and their prices in the lore of the
+ * shulker box. These are read once and moved to the binary format on the next
+ * write, after which the shulker box is emptied.
+ */
+public class VMRecord extends ShopRecord {
+    /** Number of slots of a vending machine. */
+    public static final int SIZE = 27;
+
+    private final ItemStack[] contents = new ItemStack[SIZE];
+    /** Price of the item in each slot, {@code 0} for empty slots. */
+    private final double[] prices = new double[SIZE];
+    /**
+     * Serialized single item of each slot, kept so that unchanged items are not
+     * serialized again on every write. {@code null} for slots yet to be
+     * serialized.
+     */
+    private final byte[][] itemBlobs = new byte[SIZE][];
+    /**
+     * Encoded slots whose item could not be read, kept as they are. These slots
+     * are left empty in {@link #contents} but are never filled.
+     */
+    private final byte[][] unreadableSlots = new byte[SIZE][];
+    /** Whether the shulker box still holds items or prices to be moved. */
+    private boolean legacy;
+    /**
+     * Whether the stored data could not be read at all, in which case it is kept
+     * and the vending machine must not be used.
+     */
+    private boolean unreadable;
+
+    public VMRecord(ArmorStand armorStand) {
+        super(armorStand, ShopType.VENDING_MACHINE);
+        byte[] data = ShopTags.getData(armorStand);
+        if (data == null) {
+            readLegacy();
+        } else {
+            try {
+                int failed = VMCodec.decode(data, this.contents, this.prices, this.itemBlobs,
+                        this.unreadableSlots);
+                if (failed > 0) {
+                    CustomShopLogger.sendMessage("Vending machine with " + failed + " unreadable item(s) detected at "
+                            + armorStand.getLocation() + ". They are kept, but cannot be traded.", Level.WARN);
+                }
+            } catch (IOException e) {
+                this.unreadable = true;
+                Arrays.fill(this.contents, null);
+                Arrays.fill(this.prices, 0);
+                Arrays.fill(this.itemBlobs, null);
+                Arrays.fill(this.unreadableSlots, null);
+                CustomShopLogger.sendMessage("Vending machine with unreadable data detected at "
+                        + armorStand.getLocation() + ": " + e.getMessage() + ". Report this error!", Level.FAIL);
+            }
+        }
+    }
+
+    /**
+     * Reads the items from the shulker box held by the armor stand, and their
+     * prices from its lore.
+     */
+    private void readLegacy() {
+        ItemStack container = armorStand.getEquipment().getChestplate();
+        if (container == null || !(container.getItemMeta() instanceof BlockStateMeta)) {
+            return;
+        }
+        BlockStateMeta meta = (BlockStateMeta) container.getItemMeta();
+        if (!(meta.getBlockState() instanceof ShulkerBox)) {
+            return;
+        }
+        ItemStack[] items = ((ShulkerBox) meta.getBlockState()).getInventory().getContents();
+        List<String> lore = meta.getLore();
+        for (int i = 0; i < SIZE && i < items.length; i++) {
+            this.contents[i] = items[i];
+            if (items[i] != null) {
+                this.legacy = true;
+                if (lore != null && i < lore.size()) {
+                    try {
+                        this.prices[i] = Double.parseDouble(lore.get(i));
+                    } catch (NumberFormatException e) {
+                        // The item is kept, unpriced, for the owner to price again.
+                        CustomShopLogger.sendMessage("Vending machine with unreadable price \"" + lore.get(i)
+                                + "\" in slot " + i + " detected at " + armorStand.getLocation() + ".", Level.WARN);
+                    }
+                }
+            }
+        }
+        this.legacy |= meta.hasLore();
+        if (this.legacy) {
+            markDirty();
+        }
+    }
+
+    /**
+     * Returns whether the stored data could not be read at all. Such vending
+     * machines appear empty, so they must be neither opened nor removed, lest
+     * their items be lost.
+     *
+     * @return {@code true} if the vending machine must not be used
+     */
+    public boolean isUnreadable() {
+        return this.unreadable;
+    }
+
+    /**
+     * Returns whether the vending machine held by the armor stand could not be
+     * read at all, see {@link #isUnreadable()}.
+     *
+     * @param armorStand armor stand of the vending machine
+     * @return {@code true} if the vending machine must not be used
+     */
+    public static boolean isUnreadable(ArmorStand armorStand) {
+        ShopRecord record = CustomShop.getPlugin().getShopIndex().getRecord(armorStand);
+        return record instanceof VMRecord && ((VMRecord) record).isUnreadable();
+    }
+
+    /**
+     * Returns whether every item in the vending machine could be read. Vending
+     * machines holding unreadable items can still be traded at, but their owner
+     * must not edit their contents.
+     *
+     * @return {@code true} if nothing stored was left unread
+     */
+    public boolean isIntact() {
+        if (this.unreadable) {
+            return false;
+        }
+        for (byte[] slot : this.unreadableSlots) {
+            if (slot != null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the contents of the vending machine. The items are shared with the
+     * record and must not be modified.
+     *
+     * @return array of {@link #SIZE} items, with {@code null} for empty slots
+     */
+    public ItemStack[] getContents() {
+        return this.contents.clone();
+    }
+
+    /**
+     * Returns a copy of the prices of the vending machine.
+     *
+     * @return array of {@link #SIZE} prices, indexed by slot
+     */
+    public double[] getPrices() {
+        return this.prices.clone();
+    }
+
+    /**
+     * Replaces the contents of the vending machine, e.g. after the owner moved
+     * items around. Items that are new to a slot take the price of a similar
+     * item previously in the vending machine, if any. Slots that hold an equal
+     * item are left alone, as are slots whose item could not be read.
+     *
+     * @param items items in each slot, only the first {@link #SIZE} are kept
+     */
+    public void setContents(ItemStack[] items) {
+        ItemStack[] oldContents = null;
+        double[] oldPrices = null;
+        for (int i = 0; i < SIZE; i++) {
+            ItemStack item = i < items.length ? items[i] : null;
+            if (this.unreadableSlots[i] != null || Objects.equals(this.contents[i], item)) {
+                continue;
+            }
+            if (oldContents == null) {
+                oldContents = this.contents.clone();
+                oldPrices = this.prices.clone();
+            }
+            this.contents[i] = item == null ? null : item.clone();
+            this.itemBlobs[i] = null;
+            if (item == null) {
+                this.prices[i] = 0;
+            } else if (!item.isSimilar(oldContents[i])) {
+                this.prices[i] = 0;
+                for (int j = 0; j < SIZE; j++) {
+                    if (item.isSimilar(oldContents[j])) {
+                        this.prices[i] = oldPrices[j];
+                        break;
+                    }
+                }
+            }
+        }
+        if (oldContents != null) {
+            markDirty();
+        }
+    }
+
+    /**
+     * Counts the items similar to the given item.
+     *
+     * @param item item of interest
+     * @return total amount of similar items in the vending machine
+     */
+    public int count(ItemStack item) {
+        int result = 0;
+        for (ItemStack content : this.contents) {
+            if (item.isSimilar(content)) {
+                result += content.getAmount();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Takes items similar to the given item out of the vending machine, starting
+     * from the first slot.
+     *
+     * @param item   item to take
+     * @param amount amount to take
+     * @return {@code false} if there are not enough items, in which case nothing
+     *         is taken
+     */
+    public boolean takeItems(ItemStack item, int amount) {
+        if (count(item) < amount) {
+            return false;
+        }
+        for (int i = 0; i < SIZE && amount > 0; i++) {
+            ItemStack content = this.contents[i];
+            if (!item.isSimilar(content)) {
+                continue;
+            }
+            int taken = Math.min(amount, content.getAmount());
+            amount -= taken;
+            if (taken == content.getAmount()) {
+                this.contents[i] = null;
+                this.prices[i] = 0;
+                this.itemBlobs[i] = null;
+            } else {
+                // Only the amount changes, so the serialized item is still valid.
+                ItemStack rest = content.clone();
+                rest.setAmount(content.getAmount() - taken);
+                this.contents[i] = rest;
+            }
+        }
+        markDirty();
+        return true;
+    }
+
+    /**
+     * Puts items back into the vending machine, e.g. when a purchase fails after
+     * the items were taken. Similar items are topped up first, then empty slots
+     * are filled.
+     *
+     * @param item   item to put back
+     * @param amount amount to put back
+     * @param price  price of the item, for slots that are filled
+     * @return amount that did not fit
+     */
+    public int returnItems(ItemStack item, int amount, double price) {
+        for (int i = 0; i < SIZE && amount > 0; i++) {
+            ItemStack content = this.contents[i];
+            if (item.isSimilar(content)) {
+                int added = Math.min(amount, content.getMaxStackSize() - content.getAmount());
+                if (added > 0) {
+                    ItemStack more = content.clone();
+                    more.setAmount(content.getAmount() + added);
+                    this.contents[i] = more;
+                    amount -= added;
+                }
+            }
+        }
+        for (int i = 0; i < SIZE && amount > 0; i++) {
+            if (this.contents[i] == null && this.unreadableSlots[i] == null) {
+                ItemStack stack = item.clone();
+                stack.setAmount(Math.min(amount, item.getMaxStackSize()));
+                this.contents[i] = stack;
+                this.prices[i] = price;
+                amount -= stack.getAmount();
+            }
+        }
+        markDirty();
+        return amount;
+    }
+
+    /**
+     * Sets the price of every slot holding an item similar to the given item.
+     * Does nothing if the price is unchanged.
+     *
+     * @param item  item of interest
+     * @param price price of the item
+     */
+    public void setPrice(ItemStack item, double price) {
+        boolean changed = false;
+        for (int i = 0; i < SIZE; i++) {
+            if (this.prices[i] != price && item.isSimilar(this.contents[i])) {
+                this.prices[i] = price;
+                changed = true;
+            }
+        }
+        if (changed) {
+            markDirty();
+        }
+    }
+
+    /**
+     * {@inheritDoc} Only items changed since the record was last written are
+     * serialized again, and slots that could not be read are written back as
+     * they were. Data that could not be read at all is left untouched. The shulker box of a legacy vending machine is
+     * emptied once its contents are stored.
+     */
+    @Override
+    protected void write() {
+        if (this.unreadable) {
+            return;
+        }
+        byte[] data;
+        try {
+            data = VMCodec.encode(this.contents, this.prices, this.itemBlobs, this.unreadableSlots);
+        } catch (IOException e) {
+            CustomShopLogger.sendMessage("Unable to save vending machine at " + armorStand.getLocation() + ": "
+                    + e.getMessage() + ". Report this error!", Level.FAIL);
+            return;
+        }
+        ShopTags.setData(armorStand, data);
+        if (this.legacy) {
+            this.legacy = false;
+            ItemStack container = armorStand.getEquipment().getChestplate();
+            BlockStateMeta meta = (BlockStateMeta) container.getItemMeta();
+            ShulkerBox shulker = (ShulkerBox) meta.getBlockState();
+            shulker.getInventory().clear();
+            meta.setBlockState(shulker);
+            meta.setLore(null);
+            container.setItemMeta(meta);
+            armorStand.getEquipment().setChestplate(container);
+        }
+    }
+}
@@ -19,14 +19,20 @@
 package com.paratopiamc.customshop.shop.vm;
 
 import java.util.UUID;
+import com.paratopiamc.customshop.plugin.CustomShop;
 import com.paratopiamc.customshop.plugin.CustomShopLogger;
 import com.paratopiamc.customshop.plugin.CustomShopLogger.Level;
+import com.paratopiamc.customshop.shop.ShopRecord;
 import com.paratopiamc.customshop.shop.ShopRemover;
+import com.paratopiamc.customshop.utils.LanguageUtils;
+import com.paratopiamc.customshop.utils.ShopTags;
 import org.bukkit.Location;
 import org.bukkit.Material;
 import org.bukkit.block.Block;
+import org.bukkit.block.BlockState;
 import org.bukkit.block.ShulkerBox;
 import org.bukkit.entity.ArmorStand;
+import org.bukkit.entity.Player;
 import org.bukkit.inventory.ItemStack;
 import org.bukkit.inventory.meta.BlockStateMeta;
 
@@ -36,46 +42,78 @@ import org.bukkit.inventory.meta.BlockStateMeta;
 public class VMRemover extends ShopRemover {
     private Location bottom;
     private Location top;
-    private BlockStateMeta meta;
+    private VMRecord record;
+    private Player player;
 
-    public VMRemover(Block targetBlock, ArmorStand armorStand) {
+    /**
+     * Constructor of the remover.
+     *
+     * @param targetBlock block targeted by the player
+     * @param armorStand  armor stand of the vending machine
+     * @param player      player removing the vending machine
+     */
+    public VMRemover(Block targetBlock, ArmorStand armorStand, Player player) {
         this.targetBlock = targetBlock;
         this.armorStand = armorStand;
+        this.player = player;
 
         bottom = armorStand.getLocation();
         top = armorStand.getLocation();
         top.setY(top.getY() + 1);
-
-        ItemStack chestItem = armorStand.getEquipment().getChestplate();
-        if (chestItem == null || !(chestItem.getItemMeta() instanceof BlockStateMeta)
-                || !(((BlockStateMeta) chestItem.getItemMeta()).getBlockState() instanceof ShulkerBox)) {
-            CustomShopLogger.sendMessage("Attempting to remove vending machine at " + bottom
-                    + " with missing shulker box! Report this error!", Level.FAIL);
-        } else {
-            meta = (BlockStateMeta) chestItem.getItemMeta();
-            if (meta.hasDisplayName()) {
-                this.ownerUUID = UUID.fromString(meta.getDisplayName());
-            } else {
-                CustomShopLogger.sendMessage("Attempting to remove vending machine at " + bottom
-                        + " with shulker box with missing display name! Report this error!", Level.FAIL);
-            }
-        }
+        this.ownerUUID = ShopTags.getOwnerID(armorStand);
+        ShopRecord record = CustomShop.getPlugin().getShopIndex().getRecord(armorStand);
+        this.record = record instanceof VMRecord ? (VMRecord) record : null;
     }
 
+    /**
+     * {@inheritDoc} Vending machines whose items could not all be read are only
+     * removed by players with the {@code customshop.removeshop.unreadable}
+     * permission, as the items that could not be read are lost with the armor
+     * stand.
+     */
     @Override
     public UUID removeShop(boolean dropItems) {
+        if (this.record != null && !this.record.isIntact()) {
+            if (!player.hasPermission("customshop.removeshop.unreadable")) {
+                player.sendMessage(LanguageUtils.getString("remove.unreadable"));
+                return null;
+            }
+            CustomShopLogger.sendMessage(player.getName() + " removed vending machine at " + armorStand.getLocation()
+                    + " with unreadable items, which are lost.", Level.WARN);
+        }
         bottom.getBlock().setType(Material.AIR);
         top.getBlock().setType(Material.AIR);
 
         if (dropItems) {
-            ShulkerBox shulker = (ShulkerBox) this.meta.getBlockState();
-            shulker.getInventory().forEach(item -> {
+            for (ItemStack item : getContents()) {
                 if (item != null)
                     armorStand.getWorld().dropItem(armorStand.getLocation(), item);
-            });
+            }
         }
 
+        unregisterShop();
         armorStand.remove();
         return this.ownerUUID;
     }
+
+    /**
+     * Returns the items in the vending machine. Armor stands that are not indexed
+     * as a shop are read from the shulker box that older versions kept the items
+     * in.
+     *
+     * @return items in the vending machine, with {@code null} for empty slots
+     */
+    private ItemStack[] getContents() {
+        if (this.record != null) {
+            return this.record.getContents();
+        }
+        ItemStack container = armorStand.getEquipment().getChestplate();
+        if (container != null && container.getItemMeta() instanceof BlockStateMeta) {
+            BlockState state = ((BlockStateMeta) container.getItemMeta()).getBlockState();
+            if (state instanceof ShulkerBox) {
+                return ((ShulkerBox) state).getInventory().getContents();
+            }
+        }
+        return new ItemStack[0];
+    }
 }
@@ -0,0 +1,123 @@
+/*
+ *  This file is part of CustomShop. Copyright (c) 2021 Paratopia.
+ *
+ *  CustomShop is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  CustomShop is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with CustomShop. If not, see <https://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.paratopiamc.customshop.utils;
+
+import org.bukkit.Material;
+import org.bukkit.inventory.Inventory;
+import org.bukkit.inventory.ItemStack;
+
+/**
+ * Plans how an amount of an item is added to the storage slots of an inventory,
+ * e.g. the items of a purchase to a player's inventory. The inventory is read
+ * once, when the planner is created, and only the slots that receive items are
+ * written to. Empty slots are all filled from a single copy of the item, as
+ * inventories copy the items that are put in them, so adding any amount costs at
+ * most one {@link ItemStack}.
+ * <p>
+ * A planner reflects the inventory at the time it was created, and is meant for
+ * a single {@link #add(int)} in the same tick. Not thread-safe.
+ */
+public final class InventoryPlanner {
+    private final Inventory inventory;
+    private final ItemStack item;
+    private final ItemStack[] contents;
+    private final int maxStackSize;
+    private int capacity;
+
+    /**
+     * Reads the inventory and computes how many of the item fit in it.
+     *
+     * @param inventory inventory to add items into
+     * @param item      reference item of any positive amount
+     */
+    public InventoryPlanner(Inventory inventory, ItemStack item) {
+        this.inventory = inventory;
+        this.item = item;
+        this.contents = inventory.getStorageContents();
+        this.maxStackSize = item.getMaxStackSize();
+        for (ItemStack stack : contents) {
+            if (isEmpty(stack)) {
+                capacity += maxStackSize;
+            } else if (stack.isSimilar(item)) {
+                capacity += Math.max(0, stack.getMaxStackSize() - stack.getAmount());
+            }
+        }
+    }
+
+    /**
+     * Returns the amount of the item that fits in the inventory.
+     *
+     * @return amount of item that can be added
+     */
+    public int getCapacity() {
+        return this.capacity;
+    }
+
+    /**
+     * Whether the inventory has enough space for the amount of the item.
+     *
+     * @param amount amount of item, disregards the amount tagged to the item
+     * @return {@code true} if all of the items fit
+     */
+    public boolean fits(int amount) {
+        return amount <= this.capacity;
+    }
+
+    /**
+     * Adds up to {@code amount} of the item to the inventory. Like
+     * {@link Inventory#addItem(ItemStack...)}, stacks of the item are topped up
+     * before empty slots are used.
+     *
+     * @param amount amount of item to add, disregards the amount tagged to the
+     *               item
+     * @return amount of item that did not fit
+     */
+    public int add(int amount) {
+        int remaining = amount;
+        for (int i = 0; i < contents.length && remaining > 0; i++) {
+            ItemStack stack = contents[i];
+            if (!isEmpty(stack) && stack.isSimilar(item)) {
+                int added = Math.min(remaining, stack.getMaxStackSize() - stack.getAmount());
+                if (added > 0) {
+                    stack.setAmount(stack.getAmount() + added);
+                    inventory.setItem(i, stack);
+                    remaining -= added;
+                }
+            }
+        }
+        ItemStack copy = null;
+        for (int i = 0; i < contents.length && remaining > 0; i++) {
+            if (isEmpty(contents[i])) {
+                if (copy == null) {
+                    copy = item.clone();
+                }
+                int added = Math.min(remaining, maxStackSize);
+                copy.setAmount(added);
+                inventory.setItem(i, copy);
+                remaining -= added;
+            }
+        }
+        capacity -= amount - remaining;
+        return remaining;
+    }
+
+    private static boolean isEmpty(ItemStack stack) {
+        return stack == null || stack.getType() == Material.AIR;
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ *  This file is part of CustomShop. Copyright (c) 2021 Paratopia.
+ *
+ *  CustomShop is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  CustomShop is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with CustomShop. If not, see <https://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.paratopiamc.customshop.utils;
+
+import java.util.UUID;
+import com.paratopiamc.customshop.plugin.CustomShopLogger;
+import com.paratopiamc.customshop.plugin.CustomShopLogger.Level;
+import com.paratopiamc.customshop.shop.ShopType;
+import org.bukkit.Material;
+import org.bukkit.NamespacedKey;
+import org.bukkit.entity.ArmorStand;
+import org.bukkit.inventory.EntityEquipment;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.meta.ItemMeta;
+import org.bukkit.persistence.PersistentDataContainer;
+import org.bukkit.persistence.PersistentDataType;
+import org.bukkit.plugin.Plugin;
+
+/**
+ * Utility class for the {@code PersistentDataContainer} tags that identify the
+ * armor stand of a custom shop: its type, owner, whether it is an admin shop and
+ * the version of the tags, as well as the encoded contents of shops that store
+ * them as a byte array. Armor stands of shops created by older versions of
+ * the plugin carry none of these; they are tagged from their custom name and
+ * equipment the first time they are read.
+ */
+public class ShopTags {
+    /** Current version of the tags. */
+    public static final byte VERSION = 1;
+
+    private static NamespacedKey versionKey;
+    private static NamespacedKey typeKey;
+    private static NamespacedKey ownerMostKey;
+    private static NamespacedKey ownerLeastKey;
+    private static NamespacedKey adminKey;
+    private static NamespacedKey dataKey;
+
+    private ShopTags() {
+    }
+
+    /**
+     * Creates the keys of the tags. Called once in plugin's {@code onEnable()}.
+     *
+     * @param plugin plugin owning the keys
+     */
+    public static void initialize(Plugin plugin) {
+        versionKey = new NamespacedKey(plugin, "shop-version");
+        typeKey = new NamespacedKey(plugin, "shop-type");
+        ownerMostKey = new NamespacedKey(plugin, "shop-owner-most");
+        ownerLeastKey = new NamespacedKey(plugin, "shop-owner-least");
+        adminKey = new NamespacedKey(plugin, "shop-admin");
+        dataKey = new NamespacedKey(plugin, "shop-data");
+    }
+
+    /**
+     * Tags the armor stand of a newly created shop.
+     *
+     * @param armorStand armor stand of the shop
+     * @param type       type of the shop
+     * @param ownerID    UUID of the owner
+     * @param admin      whether the shop is an admin shop
+     */
+    public static void tag(ArmorStand armorStand, ShopType type, UUID ownerID, boolean admin) {
+        PersistentDataContainer container = armorStand.getPersistentDataContainer();
+        container.set(typeKey, PersistentDataType.BYTE, type.getId());
+        container.set(ownerMostKey, PersistentDataType.LONG, ownerID.getMostSignificantBits());
+        container.set(ownerLeastKey, PersistentDataType.LONG, ownerID.getLeastSignificantBits());
+        container.set(adminKey, PersistentDataType.BYTE, (byte) (admin ? 1 : 0));
+        container.set(versionKey, PersistentDataType.BYTE, VERSION);
+    }
+
+    /**
+     * Returns the type of shop of the armor stand.
+     *
+     * @param armorStand armor stand of interest
+     * @return {@code null} if the armor stand is not a custom shop
+     */
+    public static ShopType getType(ArmorStand armorStand) {
+        PersistentDataContainer container = tagged(armorStand);
+        return container == null ? null : ShopType.fromId(container.get(typeKey, PersistentDataType.BYTE));
+    }
+
+    /**
+     * Returns the UUID of the owner of the shop.
+     *
+     * @param armorStand armor stand of the shop
+     * @return {@code null} if the armor stand is not a custom shop
+     */
+    public static UUID getOwnerID(ArmorStand armorStand) {
+        PersistentDataContainer container = tagged(armorStand);
+        if (container == null) {
+            return null;
+        }
+        return new UUID(container.get(ownerMostKey, PersistentDataType.LONG),
+                container.get(ownerLeastKey, PersistentDataType.LONG));
+    }
+
+    /**
+     * Checks if the shop is an admin shop.
+     *
+     * @param armorStand armor stand of the shop
+     * @return {@code true} if the shop is an admin shop
+     */
+    public static boolean isAdmin(ArmorStand armorStand) {
+        PersistentDataContainer container = tagged(armorStand);
+        return container != null && container.get(adminKey, PersistentDataType.BYTE) != 0;
+    }
+
+    /**
+     * Returns the encoded contents of the shop.
+     *
+     * @param armorStand armor stand of the shop
+     * @return {@code null} if the shop's contents were never stored as a byte
+     *         array
+     */
+    public static byte[] getData(ArmorStand armorStand) {
+        return armorStand.getPersistentDataContainer().get(dataKey, PersistentDataType.BYTE_ARRAY);
+    }
+
+    /**
+     * Stores the encoded contents of the shop.
+     *
+     * @param armorStand armor stand of the shop
+     * @param data       encoded contents
+     */
+    public static void setData(ArmorStand armorStand, byte[] data) {
+        armorStand.getPersistentDataContainer().set(dataKey, PersistentDataType.BYTE_ARRAY, data);
+    }
+
+    /**
+     * Returns the tags of the armor stand, tagging legacy shops first.
+     *
+     * @return {@code null} if the armor stand is not a custom shop
+     */
+    private static PersistentDataContainer tagged(ArmorStand armorStand) {
+        PersistentDataContainer container = armorStand.getPersistentDataContainer();
+        if (container.has(versionKey, PersistentDataType.BYTE)) {
+            return container;
+        }
+        return retag(armorStand) ? container : null;
+    }
+
+    /**
+     * Tags the armor stand of a shop created before shops were tagged, reading its
+     * type from its custom name, its owner from the display name of its chestplate
+     * and whether it is an admin shop from its boots.
+     *
+     * @param armorStand armor stand of interest
+     * @return {@code true} if the armor stand is a custom shop and was tagged
+     */
+    private static boolean retag(ArmorStand armorStand) {
+        ShopType type = ShopType.fromCustomName(armorStand.getCustomName());
+        if (type == null) {
+            return false;
+        }
+        EntityEquipment equipment = armorStand.getEquipment();
+        ItemStack chestItem = equipment.getChestplate();
+        ItemMeta meta = chestItem == null || chestItem.getType() == Material.AIR ? null : chestItem.getItemMeta();
+        UUID ownerID;
+        try {
+            ownerID = meta != null && meta.hasDisplayName() ? UUID.fromString(meta.getDisplayName()) : null;
+        } catch (IllegalArgumentException e) {
+            ownerID = null;
+        }
+        if (ownerID == null) {
+            CustomShopLogger.sendMessage(
+                    "Custom shop without owner's display name detected at " + armorStand.getLocation() + "!",
+                    Level.FAIL);
+            return false;
+        }
+        ItemStack adminItem = equipment.getBoots();
+        tag(armorStand, type, ownerID, adminItem != null && adminItem.getType() != Material.AIR);
+        return true;
+    }
+}
@@ -20,8 +20,8 @@ package com.paratopiamc.customshop.utils;
 
 import java.util.Collection;
 import java.util.UUID;
-import com.paratopiamc.customshop.plugin.CustomShopLogger;
-import com.paratopiamc.customshop.plugin.CustomShopLogger.Level;
+import com.paratopiamc.customshop.plugin.CustomShop;
+import com.paratopiamc.customshop.shop.ShopIndex;
 import org.bukkit.Bukkit;
 import org.bukkit.Location;
 import org.bukkit.Material;
@@ -30,9 +30,6 @@ import org.bukkit.block.Block;
 import org.bukkit.entity.ArmorStand;
 import org.bukkit.entity.Entity;
 import org.bukkit.entity.Player;
-import org.bukkit.inventory.EntityEquipment;
-import org.bukkit.inventory.ItemStack;
-import org.bukkit.inventory.meta.ItemMeta;
 
 /**
  * Utility class for shop related methods.
@@ -55,15 +52,10 @@ public class ShopUtils {
         if (player.hasPermission("customshop.admin") || player.isOp()) {
             return true;
         }
-        EntityEquipment equipment = armorStand.getEquipment();
-
-        // Test whether the shop is an admin shop.
-        ItemStack adminItem = equipment.getBoots();
-        if (adminItem != null && adminItem.getType() != Material.AIR) {
+        if (ShopTags.isAdmin(armorStand)) {
             return false;
         }
-
-        return player.getUniqueId().equals(getOwner(armorStand).getUniqueId());
+        return player.getUniqueId().equals(ShopTags.getOwnerID(armorStand));
     }
 
     /**
@@ -76,26 +68,9 @@ public class ShopUtils {
     public static OfflinePlayer getOwner(ArmorStand armorStand) {
         if (armorStand == null) {
             return null;
-        } else {
-            EntityEquipment equipment = armorStand.getEquipment();
-            ItemStack item = equipment.getChestplate();
-            if (item != null && item.getType() != Material.AIR) {
-                ItemMeta meta = item.getItemMeta();
-                if (!meta.hasDisplayName()) {
-                    Location standLocation = armorStand.getLocation();
-                    CustomShopLogger.sendMessage(
-                            "Custom shop without owner's display name detected at " + standLocation + "!", Level.FAIL);
-                    return null;
-                }
-                String ownerUUID = meta.getDisplayName();
-                return Bukkit.getOfflinePlayer(UUID.fromString(ownerUUID));
-            } else {
-                Location standLocation = armorStand.getLocation();
-                CustomShopLogger.sendMessage("Custom shop without owner item detected at " + standLocation + "!",
-                        Level.FAIL);
-                return null;
-            }
         }
+        UUID ownerID = ShopTags.getOwnerID(armorStand);
+        return ownerID == null ? null : Bukkit.getOfflinePlayer(ownerID);
     }
 
     /**
@@ -103,45 +78,51 @@ public class ShopUtils {
      * by checking if:
      * <ul>
      * <li>the target block is of type {@link Material#BARRIER}
-     * <li>there exists exactly one entity in the barrier block
-     * <li>the entity is an instance of {@link ArmorStand}
-     * <li>the armor stand has a custom name corresponding to a type of custom shop
+     * <li>the block is taken up by a shop in the {@link ShopIndex}
      * </ul>
      * Returns {@code null} if any of the above conditions are not satisfied.
+     * Barrier blocks missing from the index, e.g. in a chunk that is yet to be
+     * scanned, are searched for a shop's armor stand with
+     * {@link #findArmorStand(Block)}, which is added to the index if found.
      *
      * @param targetBlock block targeted by player, presumably a barrier block
      * @return {@link ArmorStand} entity associated with a custom shop
      */
     public static ArmorStand getArmorStand(Block targetBlock) {
-        if (targetBlock == null) {
+        if (targetBlock == null || targetBlock.getType() != Material.BARRIER) {
             return null;
         }
+        ShopIndex index = CustomShop.getPlugin().getShopIndex();
+        ArmorStand armorStand = index.get(targetBlock);
+        if (armorStand == null) {
+            armorStand = findArmorStand(targetBlock);
+            if (armorStand != null) {
+                index.add(armorStand);
+            }
+        }
+        return armorStand;
+    }
+
+    /**
+     * Searches the entities in the block for the armor stand of a custom shop.
+     * Returns {@code null} unless there exists exactly one entity in the block,
+     * and that entity is an {@link ArmorStand} with a custom name corresponding to
+     * a type of custom shop.
+     *
+     * @param targetBlock block of interest
+     * @return {@link ArmorStand} entity associated with a custom shop
+     */
+    private static ArmorStand findArmorStand(Block targetBlock) {
         Location loc = new Location(targetBlock.getWorld(), targetBlock.getX() + 0.5, targetBlock.getY() + 0.5,
                 targetBlock.getZ() + 0.5);
         Collection<Entity> list = targetBlock.getWorld().getNearbyEntities(loc, 0, 0, 0);
-        if (targetBlock.getType() != Material.BARRIER || list.size() != 1) {
+        if (list.size() != 1) {
             return null;
-        } else {
-            Entity shopEntity = (Entity) list.toArray()[0];
-            if (shopEntity instanceof ArmorStand) {
-                ArmorStand armorStand = (ArmorStand) shopEntity;
-                String name = armorStand.getCustomName();
-                boolean valid;
-                switch (name == null ? null : name) {
-                case "§5§lVending Machine":
-                    valid = true;
-                    break;
-                case "§5§lNewt's Briefcase":
-                    valid = true;
-                    break;
-                default:
-                    valid = false;
-                    break;
-                }
-                return valid ? armorStand : null;
-            } else {
-                return null;
-            }
         }
+        Entity shopEntity = list.iterator().next();
+        if (shopEntity instanceof ArmorStand && ShopTags.getType((ArmorStand) shopEntity) != null) {
+            return (ArmorStand) shopEntity;
+        }
+        return null;
     }
 }
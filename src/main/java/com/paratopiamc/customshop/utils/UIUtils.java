@@ -174,7 +174,9 @@ public final class UIUtils {
      * Whether the given inventory has sufficient space for adding the amount of
      * specified item. This method can be called before
      * {@link Inventory#addItem(ItemStack...)} if it is intended to not add any of
-     * the item into inventory given insufficient space.
+     * the item into inventory given insufficient space. Use an
+     * {@link InventoryPlanner} to add the items afterwards without reading the
+     * inventory again.
      * 
      * @param inventory to add items into
      * @param item      reference item of any positive amount
@@ -183,15 +185,24 @@ public final class UIUtils {
      * @return {@code true} if inventory has enough space for the amount of item
      */
     public static boolean hasSpace(Inventory inventory, ItemStack item, int amount) {
-        int totalSpace = 0;
-        for (int i = 0; i < 36; i++) {
-            ItemStack pItem = inventory.getItem(i);
-            if (pItem == null) {
-                totalSpace += item.getMaxStackSize();
-            } else if (pItem.isSimilar(item)) {
-                totalSpace += pItem.getMaxStackSize() - pItem.getAmount();
+        return new InventoryPlanner(inventory, item).fits(amount);
+    }
+
+    /**
+     * Returns the amount of items similar to the given item in the storage slots
+     * of an inventory.
+     *
+     * @param inventory inventory to count items in
+     * @param item      reference item of any amount
+     * @return amount of similar items
+     */
+    public static int countItems(Inventory inventory, ItemStack item) {
+        int count = 0;
+        for (ItemStack stack : inventory.getStorageContents()) {
+            if (stack != null && stack.isSimilar(item)) {
+                count += stack.getAmount();
             }
         }
-        return totalSpace >= amount;
+        return count;
     }
 }
@@ -0,0 +1,213 @@
+/*
+ *  This file is part of CustomShop. Copyright (c) 2021 Paratopia.
+ *
+ *  CustomShop is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  CustomShop is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with CustomShop. If not, see <https://www.gnu.org/licenses/>.
+ *
+ */
+package com.paratopiamc.customshop.database;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import com.paratopiamc.customshop.player.PlayerData;
+import com.paratopiamc.customshop.shop.TradePipeline;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Runs the MySQL backend against an in-memory H2 database in MySQL mode.
+ */
+class MySQLTest {
+    private static final String URL = "jdbc:h2:mem:customshop;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+
+    private MySQL database;
+
+    @BeforeEach
+    public void setUp() {
+        database = new MySQL(URL, "sa", "", 2, Logger.getLogger("CustomShopTest"));
+        database.load();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        database.execute(conn -> {
+            try (Statement s = conn.getConnection().createStatement()) {
+                s.executeUpdate("DROP ALL OBJECTS");
+            }
+            return null;
+        }, null);
+        database.close();
+    }
+
+    @Test
+    public void migrationsAreAppliedOnce() {
+        database.load();
+        int versions = database.execute(conn -> {
+            try (Statement s = conn.getConnection().createStatement();
+                    ResultSet rs = s.executeQuery("SELECT COUNT(*) FROM " + Database.schemaVersion)) {
+                rs.next();
+                return rs.getInt(1);
+            }
+        }, -1);
+        assertEquals(5, versions);
+        database.execute(conn -> {
+            assertTrue(Migration.hasColumn(conn.getConnection(), Database.pendingTransactions, "id"));
+            assertTrue(Migration.hasColumn(conn.getConnection(), Database.shopsUnlocked, "player"));
+            assertTrue(Migration.hasColumn(conn.getConnection(), Database.shops, "owner"));
+            assertTrue(Migration.hasColumn(conn.getConnection(), Database.transactions, "unit_price"));
+            assertTrue(Migration.hasColumn(conn.getConnection(), Database.pendingTransactions, "sale_count"));
+            assertTrue(Migration.hasColumn(conn.getConnection(), Database.tradeJournal, "state"));
+            return null;
+        }, null);
+    }
+
+    @Test
+    public void interruptedMigrationCanBeRetried() {
+        // Forgets migration 7 and those after it, as if it failed after its schema
+        // changes were made.
+        database.execute(conn -> {
+            try (Statement s = conn.getConnection().createStatement()) {
+                s.executeUpdate("DELETE FROM " + Database.schemaVersion + " WHERE version >= 7");
+            }
+            return null;
+        }, null);
+        database.load();
+        int versions = database.execute(conn -> {
+            try (Statement s = conn.getConnection().createStatement();
+                    ResultSet rs = s.executeQuery("SELECT COUNT(*) FROM " + Database.schemaVersion)) {
+                rs.next();
+                return rs.getInt(1);
+            }
+        }, -1);
+        assertEquals(5, versions);
+    }
+
+    @Test
+    public void shopCountsAreUpdatedAtomically() throws Exception {
+        UUID playerID = UUID.randomUUID();
+        assertEquals(1, database.incrementTotalShopsOwned(playerID).get(5, TimeUnit.SECONDS).intValue());
+        assertEquals(2, database.incrementTotalShopsOwned(playerID).get(5, TimeUnit.SECONDS).intValue());
+        assertEquals(1, database.decrementTotalShopsOwned(playerID).get(5, TimeUnit.SECONDS).intValue());
+        assertEquals(1, database.getTotalShopOwned(playerID).intValue());
+    }
+
+    @Test
+    public void shopCountCanBeReset() throws Exception {
+        UUID playerID = UUID.randomUUID();
+        database.incrementTotalShopsOwned(playerID);
+        assertEquals(5, database.setShopsOwned(playerID, 5).get(5, TimeUnit.SECONDS).intValue());
+        assertEquals(4, database.decrementTotalShopsOwned(playerID).get(5, TimeUnit.SECONDS).intValue());
+        assertEquals(4, database.getTotalShopOwned(playerID).intValue());
+    }
+
+    @Test
+    public void playerDataOnlyReflectsEarlierWrites() throws Exception {
+        UUID playerID = UUID.randomUUID();
+        database.setShopsOwned(playerID, 3);
+        CompletableFuture<PlayerData> data = database.loadPlayerData(playerID);
+        database.decrementTotalShopsOwned(playerID);
+        assertEquals(3, data.get(5, TimeUnit.SECONDS).getTotalShopsOwned());
+        assertEquals(2, database.getTotalShopOwned(playerID).intValue());
+    }
+
+    @Test
+    public void failedTransactionIsRolledBack() {
+        UUID playerID = UUID.randomUUID();
+        assertThrows(IllegalStateException.class, () -> database.executeInTransaction(conn -> {
+            try (Statement s = conn.getConnection().createStatement()) {
+                s.executeUpdate("INSERT INTO " + Database.totalShopOwned + " VALUES ('" + playerID + "', 1)");
+            }
+            throw new IllegalStateException();
+        }, null));
+        assertEquals(0, database.getTotalShopOwned(playerID).intValue());
+    }
+
+    @Test
+    public void offlineSalesAreMerged() {
+        String ownerID = UUID.randomUUID().toString();
+        String customerID = UUID.randomUUID().toString();
+        storeMessage(ownerID, customerID, "DIAMOND", 2, 10);
+        database.writeQueue.flushAndWait();
+        storeMessage(ownerID, customerID, "DIAMOND", 3, 15);
+        storeMessage(ownerID, customerID, "DIAMOND", 1, 5);
+        storeMessage(ownerID, customerID, "EMERALD", 1, 1);
+        database.writeQueue.flushAndWait();
+        assertEquals(2, countMessages(ownerID));
+        int[] diamonds = database.execute(conn -> {
+            try (Statement s = conn.getConnection().createStatement();
+                    ResultSet rs = s.executeQuery("SELECT amount, sale_count FROM " + Database.pendingTransactions
+                            + " WHERE item_name = 'DIAMOND'")) {
+                rs.next();
+                return new int[] { rs.getInt(1), rs.getInt(2) };
+            }
+        }, null);
+        assertEquals(6, diamonds[0]);
+        assertEquals(3, diamonds[1]);
+    }
+
+    @Test
+    public void offlineSalesAreCappedPerOwner() {
+        database.maxMessagesPerOwner = 2;
+        String ownerID = UUID.randomUUID().toString();
+        for (int i = 0; i < 5; i++) {
+            storeMessage(ownerID, UUID.randomUUID().toString(), "DIAMOND", 1, 1);
+            database.writeQueue.flushAndWait();
+        }
+        assertEquals(2, countMessages(ownerID));
+    }
+
+    @Test
+    public void journaledTradesKeepTheirState() {
+        UUID payer = UUID.randomUUID();
+        TradePipeline.Trade trade = new TradePipeline.Trade(UUID.randomUUID(), null, payer, null, 12.5,
+                TradePipeline.State.PENDING, System.currentTimeMillis());
+        assertTrue(database.journalTrade(trade));
+        assertEquals(1, database.loadJournal().size());
+        database.updateJournal(new TradePipeline.Trade(trade.getId(), null, payer, null, 12.5,
+                TradePipeline.State.PAID, trade.getCreatedAt()));
+        List<TradePipeline.Trade> journal = database.loadJournal();
+        assertEquals(1, journal.size());
+        assertEquals(TradePipeline.State.PAID, journal.get(0).getState());
+        assertEquals(payer, journal.get(0).getPayer());
+        assertNull(journal.get(0).getPayee());
+        database.deleteJournal(trade.getId());
+        assertTrue(database.loadJournal().isEmpty());
+    }
+
+    private void storeMessage(String ownerID, String customerID, String itemName, int amount, double totalCost) {
+        PendingWrites.Message message = new PendingWrites.Message(ownerID, customerID, true, itemName, false,
+                amount, totalCost, System.currentTimeMillis());
+        database.writeQueue.enqueue(writes -> writes.addMessage(message));
+    }
+
+    private int countMessages(String ownerID) {
+        return database.execute(conn -> {
+            try (Statement s = conn.getConnection().createStatement();
+                    ResultSet rs = s.executeQuery("SELECT COUNT(*) FROM " + Database.pendingTransactions
+                            + " WHERE player = '" + ownerID + "'")) {
+                rs.next();
+                return rs.getInt(1);
+            }
+        }, -1);
+    }
+}